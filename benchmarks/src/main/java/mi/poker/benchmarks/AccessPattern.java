@@ -0,0 +1,24 @@
+package mi.poker.benchmarks;
+
+/**
+ * @author m1
+ * Order in which benchmarks feed deals to the evaluators
+ */
+public enum AccessPattern {
+
+	/**
+	 * The same few thousand random deals again and again, deals stay in the CPU cache
+	 */
+	RANDOM,
+
+	/**
+	 * Fixed hole cards and boards in nested loop order, as dealt by an exhaustive enumeration.
+	 * Consecutive deals share all cards but the last ones.
+	 */
+	SEQUENTIAL,
+
+	/**
+	 * Random deals streamed from an array much larger than the CPU caches, no deal is seen twice in a row
+	 */
+	CACHE_HOSTILE
+}
@@ -0,0 +1,112 @@
+package mi.poker.benchmarks;
+
+import java.util.Random;
+
+import mi.poker.common.model.testbed.klaatu.PartialStageFastEval;
+import mi.poker.common.utils.CardMask;
+
+/**
+ * @author m1
+ * Seven card deals of an {@link AccessPattern}, generated from a fixed seed and encoded for every evaluator,
+ * so all evaluators see exactly the same cards. Cards of deal i are at 7*i .. 7*i+6, hole cards first.
+ */
+final class Deals {
+
+	/**
+	 * Deals evaluated by one benchmark invocation
+	 */
+	static final int BATCH = 4096;
+
+	private static final long SEED = 20130429L;
+	private static final int CACHE_HOSTILE_DEALS = 1 << 20;
+
+	final int size;
+	final int[] cards; // canonical card indexes suit*13+rank
+	final int[] stateTableCards; // 2+2 state table card numbers 1..52
+	final int[] fastEvalCards; // PartialStageFastEval encoding
+	final long[] masks5; // HandEval masks of the first 5, 6 and all 7 cards
+	final long[] masks6;
+	final long[] masks7;
+	private int next;
+
+	Deals(AccessPattern pattern) {
+		Random random = new Random(SEED);
+		size = pattern == AccessPattern.CACHE_HOSTILE ? CACHE_HOSTILE_DEALS : BATCH;
+		cards = new int[size * 7];
+		if (pattern == AccessPattern.SEQUENTIAL) {
+			enumerate(random);
+		} else {
+			for (int i = 0;i<size;i++){
+				deal(random, i);
+			}
+		}
+		stateTableCards = new int[cards.length];
+		fastEvalCards = new int[cards.length];
+		for (int i = 0;i<cards.length;i++){
+			stateTableCards[i] = (cards[i] % 13) * 4 + cards[i] / 13 + 1;
+			fastEvalCards[i] = PartialStageFastEval.encode(cards[i] % 13, cards[i] / 13);
+		}
+		masks5 = new long[size];
+		masks6 = new long[size];
+		masks7 = new long[size];
+		for (int i = 0;i<size;i++){
+			long mask = 0;
+			for (int j = 0;j<7;j++){
+				mask |= CardMask.bit(cards[i * 7 + j]);
+				if (j == 4) {
+					masks5[i] = mask;
+				} else if (j == 5) {
+					masks6[i] = mask;
+				}
+			}
+			masks7[i] = mask;
+		}
+	}
+
+	/**
+	 * @return first deal of the next batch, batches wrap around the deals
+	 */
+	int nextBatch() {
+		int first = next;
+		next = (next + BATCH) % size;
+		return first;
+	}
+
+	private void deal(Random random, int deal) {
+		long deck = CardMask.FULL_DECK;
+		for (int j = 0;j<7;j++){
+			int card = CardMask.get(deck, random.nextInt(CardMask.size(deck)));
+			deck &= ~CardMask.bit(card);
+			cards[deal * 7 + j] = card;
+		}
+	}
+
+	// random hole cards, boards from the remaining cards in enumeration order
+	private void enumerate(Random random) {
+		long deck = CardMask.FULL_DECK;
+		int[] hole = new int[2];
+		for (int j = 0;j<2;j++){
+			hole[j] = CardMask.get(deck, random.nextInt(CardMask.size(deck)));
+			deck &= ~CardMask.bit(hole[j]);
+		}
+		int[] deckCards = new int[50];
+		CardMask.toIndexes(deck, deckCards);
+		int[] board = {0, 1, 2, 3, 4}; // positions in deckCards
+		for (int i = 0;i<size;i++){
+			cards[i * 7] = hole[0];
+			cards[i * 7 + 1] = hole[1];
+			for (int j = 0;j<5;j++){
+				cards[i * 7 + 2 + j] = deckCards[board[j]];
+			}
+			// next board: increase the last position that can move, reset the ones after it
+			int j = 4;
+			while (board[j] == 50 - 5 + j) {
+				j--;
+			}
+			board[j]++;
+			for (j++;j<5;j++){
+				board[j] = board[j - 1] + 1;
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package mi.poker.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * @author m1
+ * Runs {@link EquityBenchmark} in average time mode with the GC profiler and compares the latency and allocation of
+ * every query with a baseline file, or writes a new baseline.
+ * <p>
+ * Usage: {@code java -cp benchmarks.jar mi.poker.benchmarks.EquityBaseline compare|update baseline.json [tolerance]}.
+ * Compare exits with status 1 if a query got slower or allocates more than the tolerance, 0.1 by default.
+ * No baseline is checked in: scores only compare on the same machine, so write one with update on the machine
+ * that runs compare.
+ */
+public class EquityBaseline {
+
+	private static final double DEFAULT_TOLERANCE = 0.1;
+	private static final String ALLOCATION = "gc.alloc.rate.norm";
+	// one benchmark per line, as written by write()
+	private static final Pattern ENTRY = Pattern.compile(
+			"\\{\"benchmark\": \"([^\"]+)\", \"scenario\": \"([^\"]+)\", \"score\": ([-0-9.E]+), \"allocation\": ([-0-9.E]+)\\}");
+
+	public static void main(String[] args) throws RunnerException, IOException {
+		if (args.length < 2 || !("compare".equals(args[0]) || "update".equals(args[0]))) {
+			System.out.println("Usage: EquityBaseline compare|update <baseline.json> [tolerance]");
+			return;
+		}
+		File file = new File(args[1]);
+		if ("compare".equals(args[0]) && !file.isFile()) {
+			System.out.println("No baseline " + file + ", write one first with: EquityBaseline update " + file);
+			System.exit(2);
+		}
+		Map<String, double[]> measured = run();
+		if ("update".equals(args[0])) {
+			write(file, measured);
+			return;
+		}
+		double tolerance = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_TOLERANCE;
+		if (compare(read(file), measured, tolerance) > 0) {
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * @return score in ms/op and allocation in B/op by "benchmark|scenario"
+	 */
+	private static Map<String, double[]> run() throws RunnerException {
+		Options options = new OptionsBuilder()
+				.include(EquityBenchmark.class.getSimpleName())
+				.mode(Mode.AverageTime)
+				.timeUnit(TimeUnit.MILLISECONDS)
+				.addProfiler(GCProfiler.class)
+				.build();
+		Map<String, double[]> measured = new TreeMap<String, double[]>();
+		for (RunResult run : new Runner(options).run()) {
+			BenchmarkParams params = run.getParams();
+			String benchmark = params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.') + 1);
+			org.openjdk.jmh.results.Result<?> allocation = run.getSecondaryResults().get(ALLOCATION);
+			measured.put(benchmark + "|" + params.getParam("scenario"),
+					new double[] {run.getPrimaryResult().getScore(), allocation == null ? -1 : allocation.getScore()});
+		}
+		return measured;
+	}
+
+	/**
+	 * @return number of regressions
+	 */
+	static int compare(Map<String, double[]> baseline, Map<String, double[]> measured, double tolerance) {
+		int regressions = 0;
+		for (Map.Entry<String, double[]> entry : baseline.entrySet()) {
+			double[] now = measured.get(entry.getKey());
+			if (now == null) {
+				System.out.println(entry.getKey() + ": not measured");
+				continue;
+			}
+			double[] before = entry.getValue();
+			double time = now[0] / before[0] - 1;
+			double allocation = before[1] > 0 && now[1] >= 0 ? now[1] / before[1] - 1 : 0;
+			boolean regression = time > tolerance || allocation > tolerance;
+			if (regression) {
+				regressions++;
+			}
+			System.out.println(String.format("%-50s %10.3f ms/op %+7.1f%% %12.0f B/op %+7.1f%%%s", entry.getKey(), now[0],
+					time * 100, now[1], allocation * 100, regression ? "  REGRESSION" : ""));
+		}
+		return regressions;
+	}
+
+	static Map<String, double[]> read(File file) throws IOException {
+		Map<String, double[]> baseline = new TreeMap<String, double[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				Matcher matcher = ENTRY.matcher(line);
+				if (matcher.find()) {
+					baseline.put(matcher.group(1) + "|" + matcher.group(2),
+							new double[] {Double.parseDouble(matcher.group(3)), Double.parseDouble(matcher.group(4))});
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return baseline;
+	}
+
+	static void write(File file, Map<String, double[]> measured) throws IOException {
+		PrintWriter writer = new PrintWriter(file, "UTF-8");
+		try {
+			writer.println("{");
+			writer.println("  \"scoreUnit\": \"ms/op\",");
+			writer.println("  \"allocationUnit\": \"B/op\",");
+			writer.println("  \"benchmarks\": [");
+			int n = 0;
+			for (Map.Entry<String, double[]> entry : measured.entrySet()) {
+				String[] key = entry.getKey().split("\\|");
+				writer.print(String.format("    {\"benchmark\": \"%s\", \"scenario\": \"%s\", \"score\": %s, \"allocation\": %s}",
+						key[0], key[1], format(entry.getValue()[0]), format(entry.getValue()[1])));
+				writer.println(++n < measured.size() ? "," : "");
+			}
+			writer.println("  ]");
+			writer.println("}");
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String format(double value) {
+		return String.format(Locale.ROOT, "%.4f", value);
+	}
+}
@@ -0,0 +1,72 @@
+package mi.poker.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mi.poker.calculation.EquityCalculation;
+import mi.poker.calculation.Result;
+import mi.poker.calculation.StoppingRule;
+import mi.poker.common.model.testbed.spears2p2.StateTableEvaluator;
+
+/**
+ * @author m1
+ * Latency and throughput of whole {@link EquityCalculation} queries, parsing included.
+ * Run with {@code -prof gc} to see the allocations per query, {@link EquityBaseline} compares a run with
+ * the checked-in baseline.
+ * <p>
+ * Needs handRanks.bin, the HandFST files and preflopEquity.bin in the working directory, without the preflop
+ * table heads-up preflop queries are enumerated.
+ */
+@BenchmarkMode({Mode.AverageTime, Mode.Throughput})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EquityBenchmark {
+
+	/**
+	 * Trials of the Monte Carlo benchmark, fixed so the work per query does not depend on convergence
+	 */
+	static final int TRIALS = 100000;
+
+	@Param({"HEADS_UP_PREFLOP", "HEADS_UP_FLOP", "FOUR_WAY_FLOP_DEAD", "FOUR_WAY_PREFLOP", "RANGE_VS_RANGE"})
+	public Scenario scenario;
+
+	private final StoppingRule trials = StoppingRule.DEFAULT.withMaxTrials(TRIALS);
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		StateTableEvaluator.initialize(); // table loading is not part of the first query
+	}
+
+	/**
+	 * The calculation {@link EquityCalculation} picks for the query
+	 */
+	@Benchmark
+	public Result calculate() {
+		return EquityCalculation.calculate(scenario.hands, scenario.board, scenario.dead);
+	}
+
+	@Benchmark
+	public Result calculateMonteCarlo() {
+		return EquityCalculation.calculateMonteCarlo(scenario.hands, scenario.board, scenario.dead, trials);
+	}
+
+	@Benchmark
+	public Result calculateExhaustiveEnumration() {
+		return EquityCalculation.calculateExhaustiveEnumration(scenario.hands, scenario.board, scenario.dead);
+	}
+}
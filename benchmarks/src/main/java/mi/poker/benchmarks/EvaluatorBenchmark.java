@@ -0,0 +1,166 @@
+package mi.poker.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mi.poker.common.model.testbed.klaatu.HandEval;
+import mi.poker.common.model.testbed.klaatu.PartialStageFastEval;
+import mi.poker.common.model.testbed.spears2p2.StateTableEvaluator;
+
+/**
+ * @author m1
+ * Raw speed of the hand evaluators, in hands per microsecond. Every invocation evaluates a batch of
+ * {@link Deals#BATCH} deals of the access pattern; results are summed so no evaluation can be skipped.
+ * <p>
+ * Needs handRanks.bin and the HandFST files in the working directory, they are generated on first use otherwise.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EvaluatorBenchmark {
+
+	@Param({"RANDOM", "SEQUENTIAL", "CACHE_HOSTILE"})
+	public AccessPattern pattern;
+
+	private Deals deals;
+	private final PartialStageFastEval staged = new PartialStageFastEval();
+	private final int[] stagedCards = new int[7]; // cards currently in the staged evaluator
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		StateTableEvaluator.initialize();
+		PartialStageFastEval.eval7(0, 4, 8, 12, 16, 20, 24); // loads the HandFST tables
+		deals = new Deals(pattern);
+		stagedCards[0] = -1;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Deals.BATCH)
+	public int handEval7() {
+		long[] masks = deals.masks7;
+		int sum = 0;
+		for (int i = deals.nextBatch(), end = i + Deals.BATCH;i<end;i++){
+			sum += HandEval.hand7Eval(masks[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Deals.BATCH)
+	public int handEval6() {
+		long[] masks = deals.masks6;
+		int sum = 0;
+		for (int i = deals.nextBatch(), end = i + Deals.BATCH;i<end;i++){
+			sum += HandEval.hand6Eval(masks[i]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Deals.BATCH)
+	public int handEval5() {
+		long[] masks = deals.masks5;
+		int sum = 0;
+		for (int i = deals.nextBatch(), end = i + Deals.BATCH;i<end;i++){
+			sum += HandEval.hand5Eval(masks[i]);
+		}
+		return sum;
+	}
+
+	/**
+	 * Seven state table lookups per hand, see {@link StateTableEvaluator#getRank(int, int, int)}
+	 */
+	@Benchmark
+	@OperationsPerInvocation(Deals.BATCH)
+	public int stateTable7() {
+		int[] c = deals.stateTableCards;
+		int sum = 0;
+		for (int i = deals.nextBatch() * 7, end = i + Deals.BATCH * 7;i<end;i+=7){
+			int state = StateTableEvaluator.START_STATE;
+			state = StateTableEvaluator.nextState(state, c[i]);
+			state = StateTableEvaluator.nextState(state, c[i + 1]);
+			state = StateTableEvaluator.nextState(state, c[i + 2]);
+			state = StateTableEvaluator.nextState(state, c[i + 3]);
+			state = StateTableEvaluator.nextState(state, c[i + 4]);
+			sum += StateTableEvaluator.getRank(state, c[i + 5], c[i + 6]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Deals.BATCH)
+	public int fastEval7() {
+		int[] c = deals.fastEvalCards;
+		int sum = 0;
+		for (int i = deals.nextBatch() * 7, end = i + Deals.BATCH * 7;i<end;i+=7){
+			sum += PartialStageFastEval.eval7(c[i], c[i + 1], c[i + 2], c[i + 3], c[i + 4], c[i + 5], c[i + 6]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Deals.BATCH)
+	public int fastEval6() {
+		int[] c = deals.fastEvalCards;
+		int sum = 0;
+		for (int i = deals.nextBatch() * 7, end = i + Deals.BATCH * 7;i<end;i+=7){
+			sum += PartialStageFastEval.eval6(c[i], c[i + 1], c[i + 2], c[i + 3], c[i + 4], c[i + 5]);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Deals.BATCH)
+	public int fastEval5() {
+		int[] c = deals.fastEvalCards;
+		int sum = 0;
+		for (int i = deals.nextBatch() * 7, end = i + Deals.BATCH * 7;i<end;i+=7){
+			sum += PartialStageFastEval.eval5(c[i], c[i + 1], c[i + 2], c[i + 3], c[i + 4]);
+		}
+		return sum;
+	}
+
+	/**
+	 * HandFST transducers fed card by card: only the cards that differ from the previous deal are staged again,
+	 * as the incremental exhaustive enumeration does. Pays off for {@link AccessPattern#SEQUENTIAL}.
+	 */
+	@Benchmark
+	@OperationsPerInvocation(Deals.BATCH)
+	public int stagedFastEval7() {
+		int[] c = deals.fastEvalCards;
+		int sum = 0;
+		for (int i = deals.nextBatch() * 7, end = i + Deals.BATCH * 7;i<end;i+=7){
+			int same = 0;
+			while (same < 6 && c[i + same] == stagedCards[same]) {
+				same++;
+			}
+			switch (same) { // stage from the first changed card on, falls through
+			case 0: staged.setCard1(stagedCards[0] = c[i]);
+			case 1: staged.setCard2(stagedCards[1] = c[i + 1]);
+			case 2: staged.setCard3(stagedCards[2] = c[i + 2]);
+			case 3: staged.setCard4(stagedCards[3] = c[i + 3]);
+			case 4: staged.setCard5(stagedCards[4] = c[i + 4]);
+			case 5: staged.setCard6(stagedCards[5] = c[i + 5]);
+			default:
+			}
+			sum += staged.setHand7(c[i + 6]);
+		}
+		return sum;
+	}
+}
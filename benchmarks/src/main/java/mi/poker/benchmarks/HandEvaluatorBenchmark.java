@@ -0,0 +1,75 @@
+package mi.poker.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.common.evaluator.HandEvaluator;
+
+/**
+ * @author m1
+ * Speed of every {@link EvaluatorType} through the {@link HandEvaluator} interface the calculations use,
+ * including the conversion to HandEval values, in hands per microsecond.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HandEvaluatorBenchmark {
+
+	@Param({"HAND_EVAL", "STATE_TABLE", "FAST_EVAL", "STAGED_FAST_EVAL"})
+	public EvaluatorType evaluatorType;
+
+	@Param({"RANDOM", "SEQUENTIAL", "CACHE_HOSTILE"})
+	public AccessPattern pattern;
+
+	private Deals deals;
+	private HandEvaluator evaluator;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		evaluator = evaluatorType.create();
+		deals = new Deals(pattern);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(Deals.BATCH)
+	public int evaluate7() {
+		int[] c = deals.cards;
+		int sum = 0;
+		for (int i = deals.nextBatch() * 7, end = i + Deals.BATCH * 7;i<end;i+=7){
+			sum += evaluator.evaluate(c[i], c[i + 1], c[i + 2], c[i + 3], c[i + 4], c[i + 5], c[i + 6]);
+		}
+		return sum;
+	}
+
+	/**
+	 * Board prepared once and finished with the hole cards, as the enumerations evaluate every player
+	 */
+	@Benchmark
+	@OperationsPerInvocation(Deals.BATCH)
+	public int evaluateBoardState() {
+		int[] c = deals.cards;
+		int sum = 0;
+		for (int i = deals.nextBatch() * 7, end = i + Deals.BATCH * 7;i<end;i+=7){
+			long board = evaluator.boardState(c[i + 2], c[i + 3], c[i + 4], c[i + 5], c[i + 6]);
+			sum += evaluator.evaluate(board, c[i], c[i + 1]);
+		}
+		return sum;
+	}
+}
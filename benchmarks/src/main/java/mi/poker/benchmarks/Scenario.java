@@ -0,0 +1,24 @@
+package mi.poker.benchmarks;
+
+/**
+ * @author m1
+ * Queries of {@link EquityBenchmark}, taken from Main and EquityCalculationTest
+ */
+public enum Scenario {
+
+	HEADS_UP_PREFLOP("AcAh,7d2d", "", ""),
+	HEADS_UP_FLOP("JcJh,8s7s", "4dAc5d", ""),
+	FOUR_WAY_FLOP_DEAD("KK,AKo,9s8s,3h3s", "4h8hQc", "2c3c3d"),
+	FOUR_WAY_PREFLOP("AcAh,7d2d,5d4d,6s4s", "", ""),
+	RANGE_VS_RANGE("QQ+|AKs,JJ|TT|99|88", "4dAc5d", "");
+
+	final String hands;
+	final String board;
+	final String dead;
+
+	private Scenario(String hands, String board, String dead) {
+		this.hands = hands;
+		this.board = board;
+		this.dead = dead;
+	}
+}
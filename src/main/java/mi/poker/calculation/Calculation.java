@@ -17,4 +17,12 @@ public interface Calculation {
 	 */
 	public Result calculate(String playerHands, String boardCards,
 			String deadCards);
+	
+	/**
+	 * Same as {@link #calculate(String, String, String)} for already parsed input
+	 * @param ranges range of every player
+	 * @param boardCards board as a {@link mi.poker.common.utils.CardMask}
+	 * @param deadCards dead cards as a {@link mi.poker.common.utils.CardMask}
+	 */
+	public Result calculate(Range[] ranges, long boardCards, long deadCards);
 }
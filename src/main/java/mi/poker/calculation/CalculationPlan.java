@@ -0,0 +1,32 @@
+package mi.poker.calculation;
+
+/**
+ * @author m1
+ * Calculation chosen by the {@link CalculationPlanner} for a query, and why
+ */
+public final class CalculationPlan {
+
+	private final Calculation calculation;
+	private final String description;
+
+	CalculationPlan(Calculation calculation, String description) {
+		this.calculation = calculation;
+		this.description = description;
+	}
+
+	public Calculation getCalculation() {
+		return calculation;
+	}
+
+	/**
+	 * @return the chosen calculation with its estimated size and cost
+	 */
+	public String getDescription() {
+		return description;
+	}
+
+	@Override
+	public String toString() {
+		return description;
+	}
+}
@@ -0,0 +1,232 @@
+package mi.poker.calculation;
+
+import java.util.concurrent.TimeUnit;
+
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.common.utils.CardMask;
+
+/**
+ * @author m1
+ * Chooses the calculation of a query from its exact size and a cost model.
+ * <p>
+ * The number of hand evaluations of an exhaustive enumeration is counted exactly: every assignment of
+ * non-overlapping hands to the players, after board and dead cards are removed, is played on every board.
+ * Heads-up the range enumeration evaluates every hand once per board instead. Costs are the evaluation counts
+ * times calibrated nanoseconds per evaluation (see {@link #calibrate()}), suit symmetries are not counted, so
+ * the estimates are upper bounds. The cheapest exact calculation within the latency budget is chosen, heads-up
+ * preflop queries are answered from the {@link PreflopEquityTable} when it is available, everything else is
+ * simulated by Monte Carlo until the budget is used up or the default number of trials is played.
+ * <p>
+ * Exact calculations and the preflop table count every combo of a range once, only the simulation draws
+ * hands by their weights. Queries with a weighted range are always simulated, so their result does not
+ * depend on the budget or the board.
+ */
+public class CalculationPlanner {
+
+	public static final long DEFAULT_BUDGET_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+	// default costs, measured on a single core 2.4 GHz machine
+	private volatile double exhaustiveNanos = 25; // per hand evaluation of the exhaustive enumeration
+	private volatile double rangeNanos = 60; // per hand evaluation of the range enumeration, sorting included
+	private volatile double trialNanos = 300; // per player and Monte Carlo trial
+	private volatile long budgetNanos;
+
+	public CalculationPlanner() {
+		this(DEFAULT_BUDGET_NANOS, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * @param budget latency an exact calculation may take, longer ones are simulated for this long
+	 */
+	public CalculationPlanner(long budget, TimeUnit unit) {
+		setBudget(budget, unit);
+	}
+
+	/**
+	 * @param evaluatorType evaluator backend, null for the calculations' defaults
+	 * @return the chosen calculation with the reason
+	 */
+	public CalculationPlan plan(Range[] ranges, long boardCards, long deadCards, EvaluatorType evaluatorType) {
+		return plan(ranges, boardCards, deadCards, evaluatorType, budgetNanos);
+	}
+
+	/**
+	 * Same as {@link #plan(Range[], long, long, EvaluatorType)} with another latency budget, e.g. the time left to a deadline
+	 * @param budget nanoseconds
+	 */
+	public CalculationPlan plan(Range[] ranges, long boardCards, long deadCards, EvaluatorType evaluatorType, long budget) {
+		for (Range range : ranges) {
+			if (range.isWeighted()) {
+				return new CalculationPlan(monteCarlo(evaluatorType, budget), "monte carlo: weighted ranges, "
+						+ millis(budget) + " ms, about " + trials(ranges, budget) + " trials");
+			}
+		}
+		if (ranges.length == 2 && boardCards == CardMask.EMPTY && deadCards == CardMask.EMPTY) {
+			PreflopEquityTable table = PreflopEquityTable.getDefault();
+			if (table != null) {
+				return new CalculationPlan(table, "preflop table: " + ranges[0].size() * ranges[1].size() + " matchups");
+			}
+		}
+
+		long[][] hands = new long[ranges.length][];
+		for (int i = 0;i<ranges.length;i++){
+			hands[i] = ranges[i].removeDead(boardCards | deadCards).masks();
+		}
+		int missing = 5 - CardMask.size(boardCards);
+		long boards = combinations(52 - CardMask.size(boardCards | deadCards) - 2 * ranges.length, missing);
+		// assignments above the limit can not be enumerated within the budget anyway, stop counting there
+		long limit = (long) Math.min(budget / exhaustiveNanos / ranges.length / Math.max(boards, 1), 1e15) + 1;
+		long assignments = countAssignments(hands, 0, 0, limit);
+		double exhaustive = exhaustiveNanos * assignments * boards * ranges.length;
+		String counts = assignments + (assignments >= limit ? "+" : "") + " hand assignments x " + boards + " boards";
+
+		double range = Double.MAX_VALUE;
+		if (ranges.length == 2) {
+			long rangeBoards = combinations(52 - CardMask.size(boardCards | deadCards), missing);
+			range = rangeNanos * rangeBoards * (hands[0].length + hands[1].length);
+		}
+
+		if (Math.min(exhaustive, range) <= budget) {
+			if (range < exhaustive) {
+				return new CalculationPlan(evaluatorType == null ? new RangeEnumeration() : new RangeEnumeration(evaluatorType),
+						"range enumeration: " + counts + ", estimated " + millis(range) + " ms of " + millis(budget) + " ms");
+			}
+			ExhaustiveEnumeration enumeration;
+			if (evaluatorType == null) {
+				enumeration = new ExhaustiveEnumeration();
+				enumeration.setIncremental(true); // no evaluator asked for, use the fastest board walk
+			} else {
+				enumeration = new ExhaustiveEnumeration(evaluatorType);
+			}
+			return new CalculationPlan(enumeration,
+					"exhaustive enumeration: " + counts + ", estimated " + millis(exhaustive) + " ms of " + millis(budget) + " ms");
+		}
+
+		String estimate = (assignments >= limit && range >= exhaustive ? "at least " : "") + millis(Math.min(exhaustive, range));
+		return new CalculationPlan(monteCarlo(evaluatorType, budget), "monte carlo: " + counts + ", exact estimated " + estimate
+				+ " ms over " + millis(budget) + " ms, about " + trials(ranges, budget) + " trials");
+	}
+
+	/**
+	 * @return simulation running for the budget or until the default number of trials is played
+	 */
+	private static MonteCarloSimulation monteCarlo(EvaluatorType evaluatorType, long budget) {
+		MonteCarloSimulation simulation = evaluatorType == null ? new MonteCarloSimulation() : new MonteCarloSimulation(evaluatorType);
+		simulation.setStoppingRule(StoppingRule.DEFAULT.withTimeBudget(Math.max(1, budget), TimeUnit.NANOSECONDS));
+		return simulation;
+	}
+
+	private long trials(Range[] ranges, long budget) {
+		return Math.min(StoppingRule.DEFAULT.getMaxTrials(), (long) (budget / trialNanos / ranges.length));
+	}
+
+	/**
+	 * Counts the ways to deal one hand of every player from 'player' on, without dealing a card twice
+	 * @param used cards dealt to the previous players
+	 * @param limit counting stops when this many assignments are found
+	 */
+	static long countAssignments(long[][] hands, int player, long used, long limit) {
+		if (player == hands.length - 1) { // last player, only hands left to count
+			long count = 0;
+			for (long hand : hands[player]) {
+				if ((hand & used) == 0) {
+					count++;
+				}
+			}
+			return count;
+		}
+		long count = 0;
+		for (long hand : hands[player]) {
+			if ((hand & used) == 0) {
+				count += countAssignments(hands, player + 1, used | hand, limit - count);
+				if (count >= limit) {
+					return count;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Measures the costs of the cost model on this machine, takes about a second
+	 */
+	public void calibrate() {
+		Range[] exhaustive = Range.parsePlayers("AcAh,KdKs");
+		long exhaustiveBoard = HandParser.parseCardMask("2c7h");
+		ExhaustiveEnumeration enumeration = new ExhaustiveEnumeration();
+		enumeration.setIncremental(true);
+		enumeration.setSuitIsomorphism(false);
+		long evaluations = combinations(52 - 6, 3) * 2;
+		exhaustiveNanos = fastest(enumeration, exhaustive, exhaustiveBoard) / evaluations;
+
+		Range[] ranges = Range.parsePlayers("QQ+|AKs,JJ|TT|99|88");
+		long rangeBoard = HandParser.parseCardMask("4dAc5d");
+		RangeEnumeration rangeEnumeration = new RangeEnumeration();
+		rangeEnumeration.setSuitIsomorphism(false);
+		evaluations = combinations(52 - 3, 2) * (ranges[0].removeDead(rangeBoard).size() + ranges[1].removeDead(rangeBoard).size());
+		rangeNanos = fastest(rangeEnumeration, ranges, rangeBoard) / evaluations;
+
+		MonteCarloSimulation simulation = new MonteCarloSimulation();
+		int trials = 100000;
+		simulation.setStoppingRule(StoppingRule.DEFAULT.withMaxTrials(trials));
+		trialNanos = fastest(simulation, exhaustive, CardMask.EMPTY) / trials / 2;
+	}
+
+	// nanoseconds of the fastest of a few runs, the first ones warm up
+	private static double fastest(Calculation calculation, Range[] ranges, long board) {
+		long best = Long.MAX_VALUE;
+		for (int i = 0;i<5;i++){
+			long start = System.nanoTime();
+			calculation.calculate(ranges, board, CardMask.EMPTY);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		return best;
+	}
+
+	private static long combinations(int n, int k) {
+		long c = 1;
+		for (int i = 0;i<k;i++){
+			c = c * (n - i) / (i + 1);
+		}
+		return c;
+	}
+
+	private static String millis(double nanos) {
+		return String.valueOf(Math.round(nanos / 1e4) / 100.0);
+	}
+
+	public long getBudgetNanos() {
+		return budgetNanos;
+	}
+
+	public void setBudget(long budget, TimeUnit unit) {
+		if (budget <= 0) {
+			throw new IllegalArgumentException("Budget must be positive: " + budget);
+		}
+		this.budgetNanos = unit.toNanos(budget);
+	}
+
+	public double getExhaustiveNanos() {
+		return exhaustiveNanos;
+	}
+
+	public void setExhaustiveNanos(double exhaustiveNanos) {
+		this.exhaustiveNanos = exhaustiveNanos;
+	}
+
+	public double getRangeNanos() {
+		return rangeNanos;
+	}
+
+	public void setRangeNanos(double rangeNanos) {
+		this.rangeNanos = rangeNanos;
+	}
+
+	public double getTrialNanos() {
+		return trialNanos;
+	}
+
+	public void setTrialNanos(double trialNanos) {
+		this.trialNanos = trialNanos;
+	}
+}
@@ -0,0 +1,16 @@
+/**
+ * @author m1
+ */
+package mi.poker.calculation;
+
+/**
+ * Calculation that can be stopped while it runs
+ */
+public interface CancellableCalculation extends Calculation {
+	/**
+	 * @param token checked while calculating, null to never stop. Exact calculations throw a
+	 * {@link java.util.concurrent.CancellationException} when it is cancelled or expires, simulations
+	 * return the trials run so far when it expires.
+	 */
+	public void setCancellationToken(CancellationToken token);
+}
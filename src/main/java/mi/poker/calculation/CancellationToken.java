@@ -0,0 +1,88 @@
+package mi.poker.calculation;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author m1
+ * Cancellation and deadline of running calculations, checked by the calculations between boards or rounds
+ * of trials. Thread-safe: one thread cancels, the calculating threads check.
+ * <pre>
+ * CancellationToken token = CancellationToken.withTimeout(50, TimeUnit.MILLISECONDS);
+ * </pre>
+ */
+public final class CancellationToken {
+
+	private final CancellationToken parent; // cancelling the parent cancels this token, null if none
+	private final boolean hasDeadline;
+	private final long deadline; // System.nanoTime() of the deadline
+	private volatile boolean cancelled;
+
+	/**
+	 * Token without deadline, only cancelled by {@link #cancel()}
+	 */
+	public CancellationToken() {
+		this(null, false, 0);
+	}
+
+	private CancellationToken(CancellationToken parent, boolean hasDeadline, long deadline) {
+		this.parent = parent;
+		this.hasDeadline = hasDeadline;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * @return token whose deadline is the given time from now
+	 */
+	public static CancellationToken withTimeout(long timeout, TimeUnit unit) {
+		return new CancellationToken(null, true, System.nanoTime() + unit.toNanos(timeout));
+	}
+
+	/**
+	 * @return token cancelled with this one, with the earlier of this deadline and the given time from now
+	 */
+	public CancellationToken child(long timeout, TimeUnit unit) {
+		long nanos = unit.toNanos(timeout);
+		if (nanos >= getRemainingNanos()) {
+			return new CancellationToken(this, hasDeadline, deadline);
+		}
+		return new CancellationToken(this, true, System.nanoTime() + nanos);
+	}
+
+	/**
+	 * Asks the calculations checking this token to stop
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled || (parent != null && parent.isCancelled());
+	}
+
+	/**
+	 * @return true if the deadline has passed
+	 */
+	public boolean isExpired() {
+		return hasDeadline && System.nanoTime() - deadline >= 0;
+	}
+
+	/**
+	 * @return nanoseconds to the deadline, 0 if it has passed, Long.MAX_VALUE without deadline
+	 */
+	public long getRemainingNanos() {
+		return hasDeadline ? Math.max(0, deadline - System.nanoTime()) : Long.MAX_VALUE;
+	}
+
+	/**
+	 * @throws CancellationException if the token was cancelled or the deadline has passed
+	 */
+	public void check() {
+		if (isCancelled()) {
+			throw new CancellationException("Calculation cancelled");
+		}
+		if (isExpired()) {
+			throw new CancellationException("Deadline passed");
+		}
+	}
+}
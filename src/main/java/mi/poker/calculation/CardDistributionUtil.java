@@ -3,6 +3,7 @@ package mi.poker.calculation;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import mi.poker.common.model.testbed.klaatu.Card;
 import mi.poker.common.model.testbed.klaatu.CardSet;
@@ -13,20 +14,30 @@ import mi.poker.common.utils.CollectionUtil;
  */
 public class CardDistributionUtil {
 
+	private static final Random RANDOM = new Random();
+
 	/**
 	 * Randomly pick's on of possible hands, and if cards from this hand are
 	 * available in the deck then extract them from deck and returns this hand
 	 * Extract picked card from deck 
 	 */
 	public static CardSet extractRandomPossibleCard(CardSet[] possibleHands, CardSet deck) {
+		return extractRandomPossibleCard(possibleHands, deck, RANDOM);
+	}
+
+	/**
+	 * Same as {@link #extractRandomPossibleCard(CardSet[], CardSet)}
+	 * @param random picks the hand, for deals that can be repeated
+	 */
+	public static CardSet extractRandomPossibleCard(CardSet[] possibleHands, CardSet deck, Random random) {
 		if (possibleHands.length == 1326){ // all hands are possible, so random
 			CardSet result = new CardSet();
-			result.add(deck.dealCard());
-			result.add(deck.dealCard());
+			result.add(deck.dealCard(random));
+			result.add(deck.dealCard(random));
 			return result;
 		}
 		List<CardSet> hands = CollectionUtil.buildListFromArray(possibleHands);
-		Collections.shuffle(hands); // we need random order
+		Collections.shuffle(hands, random); // we need random order
 		for (CardSet h : hands) {
 			Card card1 = h.get(0);
 			Card card2 = h.get(1);
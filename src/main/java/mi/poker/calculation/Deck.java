@@ -0,0 +1,80 @@
+package mi.poker.calculation;
+
+import java.util.Random;
+
+import mi.poker.common.utils.CardMask;
+
+/**
+ * @author m1
+ * Reusable deck of card indexes, dealt by a partial Fisher-Yates shuffle.
+ * <p>
+ * Dealing swaps a random card of the undealt part to the end of the dealt part, one random number and no
+ * allocation per card. {@link #reset()} puts the dealt cards back in O(1): the array always holds the same
+ * cards in some order, and the shuffle deals uniformly from any order. {@link #restore()} also brings back the
+ * initial order, for deals that must repeat with the same random numbers. Not thread-safe, every thread needs
+ * its own deck.
+ */
+public final class Deck {
+
+	private final int[] initial;
+	private final int[] cards;
+	private int dealt;
+
+	/**
+	 * @param deck cards of the deck as a {@link CardMask}
+	 */
+	public Deck(long deck) {
+		initial = new int[CardMask.size(deck)];
+		CardMask.toIndexes(deck, initial);
+		cards = initial.clone();
+	}
+
+	/**
+	 * @return index of a random card not dealt since the last {@link #reset()}
+	 */
+	public int deal(Random random) {
+		if (dealt == cards.length) {
+			throw new RuntimeException("No cards left in the deck of " + cards.length);
+		}
+		int i = dealt + random.nextInt(cards.length - dealt);
+		int card = cards[i];
+		cards[i] = cards[dealt];
+		cards[dealt++] = card;
+		return card;
+	}
+
+	/**
+	 * Deals until a card not in used comes, the cards skipped are dealt as well
+	 * @param used cards taken outside of this deck, e.g. hands drawn from ranges
+	 * @return index of a random card neither dealt nor used
+	 */
+	public int deal(long used, Random random) {
+		int card;
+		do {
+			card = deal(random);
+		} while ((CardMask.bit(card) & used) != 0);
+		return card;
+	}
+
+	/**
+	 * Returns all dealt cards to the deck
+	 */
+	public void reset() {
+		dealt = 0;
+	}
+
+	/**
+	 * Returns all dealt cards to the deck in its initial order, the same random numbers deal the same cards again
+	 */
+	public void restore() {
+		System.arraycopy(initial, 0, cards, 0, cards.length);
+		dealt = 0;
+	}
+
+	/**
+	 * @return number of cards not dealt
+	 */
+	public int size() {
+		return cards.length - dealt;
+	}
+}
@@ -0,0 +1,296 @@
+package mi.poker.calculation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.common.evaluator.HandEvaluator;
+import mi.poker.common.utils.CardMask;
+import mi.poker.common.utils.SuitIsomorphism;
+
+/**
+ * @author m1
+ * Calculates many queries at once, sharing the boards between queries with the same board and dead cards.
+ * <p>
+ * Queries are grouped by board and dead cards. Every query of a group the {@link CalculationPlanner} would
+ * enumerate exhaustively is played on the boards of the group together with the others: each board is dealt
+ * once, every hand of every query is evaluated once per board, and the queries only compare the ranks of their
+ * hand assignments. Results are the same as those of {@link ExhaustiveEnumeration}. Queries too big to
+ * enumerate are calculated one by one with the planned calculation, usually a Monte Carlo simulation.
+ */
+public class EquityBatch {
+
+	private final EvaluatorType evaluatorType;
+	private final CalculationPlanner planner;
+
+	/**
+	 * Batch with the default evaluators and the planner of {@link EquityCalculation}
+	 */
+	public EquityBatch() {
+		this(null, EquityCalculation.getPlanner());
+	}
+
+	/**
+	 * @param evaluatorType evaluator backend, null for the calculations' defaults
+	 * @param planner decides which queries are enumerated and how the others are calculated
+	 */
+	public EquityBatch(EvaluatorType evaluatorType, CalculationPlanner planner) {
+		this.evaluatorType = evaluatorType;
+		this.planner = planner;
+	}
+
+	/**
+	 * @return result of every query, in the order of the queries
+	 */
+	public List<Result> calculate(List<EquityQuery> queries) {
+		Result[] results = new Result[queries.size()];
+		Map<List<Long>, List<Query>> groups = new LinkedHashMap<List<Long>, List<Query>>();
+		for (int i = 0;i<results.length;i++){
+			EquityQuery query = queries.get(i);
+			CalculationPlan plan = planner.plan(query.getRanges(), query.getBoardCards(), query.getDeadCards(), evaluatorType);
+			if (plan.getCalculation() instanceof ExhaustiveEnumeration) {
+				List<Long> key = Arrays.asList(query.getBoardCards(), query.getDeadCards());
+				List<Query> group = groups.get(key);
+				if (group == null) {
+					group = new ArrayList<Query>();
+					groups.put(key, group);
+				}
+				group.add(new Query(i, query, plan));
+			} else {
+				results[i] = calculate(query, plan);
+			}
+		}
+
+		for (Map.Entry<List<Long>, List<Query>> group : groups.entrySet()) {
+			if (group.getValue().size() == 1) { // nothing to share, the planned enumeration is faster
+				Query query = group.getValue().get(0);
+				results[query.index] = calculate(query.query, query.plan);
+				continue;
+			}
+			long board = group.getKey().get(0);
+			long dead = group.getKey().get(1);
+			Query[] batch = group.getValue().toArray(new Query[group.getValue().size()]);
+			HandEvaluator evaluator = (evaluatorType == null ? EvaluatorType.HAND_EVAL : evaluatorType).create();
+			BoardEnumerator enumerator = new BoardEnumerator(evaluator, batch, board, symmetries(batch, board, dead));
+			enumerator.dealBoards(CardMask.FULL_DECK & ~board & ~dead);
+			String plan = "batch enumeration: " + batch.length + " queries sharing " + enumerator.boards + " boards";
+			for (Query query : batch) {
+				Result result = new Result(query.query.getRanges());
+				query.accumulator.applyTo(result);
+				result.calculateStatistic();
+				result.setPlan(plan);
+				results[query.index] = result;
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+	private static Result calculate(EquityQuery query, CalculationPlan plan) {
+		Result result = query.calculate(plan.getCalculation());
+		result.setPlan(plan.getDescription());
+		return result;
+	}
+
+	/**
+	 * @return suit permutations that keep board, dead cards and the hands of every query in place
+	 */
+	private static int[] symmetries(Query[] batch, long board, long dead) {
+		int[] group = SuitIsomorphism.stabilizer(SuitIsomorphism.ALL, board);
+		group = SuitIsomorphism.stabilizer(group, dead);
+		for (Query query : batch) {
+			for (long[] hands : query.hands) {
+				group = SuitIsomorphism.stabilizer(group, hands);
+			}
+		}
+		return group;
+	}
+
+	/**
+	 * Query of a batch, hands without board and dead cards
+	 */
+	private static final class Query {
+
+		private final int index;
+		private final EquityQuery query;
+		private final CalculationPlan plan;
+		private final long[][] hands;
+		private final int[][] combos;
+		private final int[] ranks;
+		private final ResultAccumulator accumulator;
+
+		Query(int index, EquityQuery query, CalculationPlan plan) {
+			this.index = index;
+			this.query = query;
+			this.plan = plan;
+			Range[] ranges = query.getRanges();
+			long dead = query.getBoardCards() | query.getDeadCards();
+			hands = new long[ranges.length][];
+			combos = new int[ranges.length][];
+			for (int i = 0;i<ranges.length;i++){
+				Range live = ranges[i].removeDead(dead);
+				hands[i] = live.masks();
+				combos[i] = live.combos();
+			}
+			ranks = new int[ranges.length];
+			accumulator = new ResultAccumulator(ranges.length);
+		}
+	}
+
+	/**
+	 * Deals the boards of a group and plays every query on them
+	 */
+	private static final class BoardEnumerator {
+
+		private final HandEvaluator evaluator;
+		private final Query[] batch;
+		private final long board;
+		private final int[] group;
+		// combos of any query, with their card masks and card indexes
+		private final int[] combos;
+		private final long[] comboMasks;
+		private final int[] comboLow;
+		private final int[] comboHigh;
+		// combo -> rank on the current board
+		private final int[] ranks = new int[Range.COMBOS];
+		private long boards;
+
+		// enumeration state, card indexes
+		private final int[] boardCards = new int[5];
+		private final int[] deckCards = new int[52];
+
+		BoardEnumerator(HandEvaluator evaluator, Query[] batch, long board, int[] group) {
+			this.evaluator = evaluator;
+			this.batch = batch;
+			this.board = board;
+			this.group = group;
+			boolean[] used = new boolean[Range.COMBOS];
+			int count = 0;
+			for (Query query : batch) {
+				for (int[] playerCombos : query.combos) {
+					for (int combo : playerCombos) {
+						if (!used[combo]) {
+							used[combo] = true;
+							count++;
+						}
+					}
+				}
+			}
+			combos = new int[count];
+			comboMasks = new long[count];
+			comboLow = new int[count];
+			comboHigh = new int[count];
+			count = 0;
+			for (int combo = 0;combo<Range.COMBOS;combo++){
+				if (used[combo]) {
+					long hand = Range.comboMask(combo);
+					combos[count] = combo;
+					comboMasks[count] = hand;
+					comboLow[count] = CardMask.first(hand);
+					comboHigh[count++] = CardMask.first(CardMask.removeFirst(hand));
+				}
+			}
+		}
+
+		/**
+		 * @param deck cards not on the board and not dead
+		 */
+		void dealBoards(long deck) {
+			int boardSize = CardMask.toIndexes(board, boardCards);
+			int deckSize = CardMask.toIndexes(deck, deckCards);
+			dealBoard(boardSize, 0, deckSize);
+		}
+
+		private void dealBoard(int boardSize, int cardIndex, int deckSize) {
+			if (boardSize == 5) {
+				showdown();
+				return;
+			}
+			for (int i = cardIndex;i<deckSize;i++){
+				boardCards[boardSize] = deckCards[i];
+				dealBoard(boardSize + 1, i + 1, deckSize);
+			}
+		}
+
+		private void showdown() {
+			long boardMask = 0;
+			for (int card : boardCards) {
+				boardMask |= CardMask.bit(card);
+			}
+			long weight = 1;
+			if (group.length > 1) {
+				weight = SuitIsomorphism.orbitSize(group, boardMask);
+				if (weight == 0) { // suit permutation of another board
+					return;
+				}
+			}
+			boards++;
+			long boardState = evaluator.boardState(boardCards[0], boardCards[1], boardCards[2], boardCards[3], boardCards[4]);
+			for (int i = 0;i<combos.length;i++){
+				if ((comboMasks[i] & boardMask) == 0) {
+					ranks[combos[i]] = evaluator.evaluate(boardState, comboLow[i], comboHigh[i]);
+				}
+			}
+			for (Query query : batch) {
+				if (query.hands.length == 2) {
+					playHeadsUp(query, boardMask, weight);
+				} else {
+					play(query, 0, boardMask, weight);
+				}
+			}
+		}
+
+		/**
+		 * Same as {@link #play(Query, int, long, long)} for two players, counts the games of the board first
+		 */
+		private void playHeadsUp(Query query, long boardMask, long weight) {
+			long[] first = query.hands[0];
+			long[] second = query.hands[1];
+			int[] firstCombos = query.combos[0];
+			int[] secondCombos = query.combos[1];
+			long games = 0;
+			long wins = 0;
+			long ties = 0;
+			for (int i = 0;i<first.length;i++){
+				if ((first[i] & boardMask) != 0) {
+					continue;
+				}
+				long used = boardMask | first[i];
+				int rank = ranks[firstCombos[i]];
+				for (int j = 0;j<second.length;j++){
+					if ((second[j] & used) == 0) {
+						int other = ranks[secondCombos[j]];
+						games++;
+						if (rank > other) {
+							wins++;
+						} else if (rank == other) {
+							ties++;
+						}
+					}
+				}
+			}
+			query.accumulator.addHeadsUp(games * weight, wins * weight, ties * weight);
+		}
+
+		/**
+		 * Plays every hand assignment of the players from 'player' on
+		 * @param used board and the hands of the previous players
+		 */
+		private void play(Query query, int player, long used, long weight) {
+			long[] hands = query.hands[player];
+			int[] handCombos = query.combos[player];
+			for (int i = 0;i<hands.length;i++){
+				if ((hands[i] & used) == 0) {
+					query.ranks[player] = ranks[handCombos[i]];
+					if (player == query.hands.length - 1) {
+						query.accumulator.addGame(query.ranks, weight);
+					} else {
+						play(query, player + 1, used | hands[i], weight);
+					}
+				}
+			}
+		}
+	}
+}
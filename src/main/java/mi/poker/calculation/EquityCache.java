@@ -0,0 +1,232 @@
+package mi.poker.calculation;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.common.utils.SuitIsomorphism;
+
+/**
+ * @author m1
+ * Thread-safe cache of {@link EquityCalculation} results.
+ * <p>
+ * Queries are stored by their canonical form: of all 24 suit permutations of ranges, board and dead cards, with
+ * players sorted, the smallest one is the key. Queries that differ only by suit names or player order share one
+ * cached result, which is copied back in the caller's player order. Entries are evicted least recently used first
+ * when the cache is full, and after the time to live if one is set.
+ * <p>
+ * Results are calculated outside the lock, two threads asking the same new query may both calculate it.
+ */
+public class EquityCache implements Calculation {
+
+	private final int maxSize;
+	private final long timeToLive; // nanoseconds, 0 if entries do not expire
+	private final EvaluatorType evaluatorType;
+	private final Map<Key, CacheEntry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Cache without expiry, results of the default calculations
+	 */
+	public EquityCache(int maxSize) {
+		this(maxSize, 0, TimeUnit.NANOSECONDS, null);
+	}
+
+	/**
+	 * @param maxSize number of results kept
+	 * @param timeToLive time a result is used after it was calculated, 0 to keep it until evicted
+	 * @param evaluatorType evaluator backend, null for the calculation's default
+	 */
+	public EquityCache(int maxSize, long timeToLive, TimeUnit unit, EvaluatorType evaluatorType) {
+		if (maxSize <= 0 || timeToLive < 0) {
+			throw new IllegalArgumentException("Invalid cache size " + maxSize + " or time to live " + timeToLive);
+		}
+		this.maxSize = maxSize;
+		this.timeToLive = unit.toNanos(timeToLive);
+		this.evaluatorType = evaluatorType;
+		this.entries = new LinkedHashMap<Key, CacheEntry>(16, 0.75f, true) { // access order, eldest is least recently used
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest) {
+				if (size() > EquityCache.this.maxSize) {
+					evictions.incrementAndGet();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public Result calculate(String playerHands, String boardCards,
+			String deadCards) {
+		return calculate(Range.parsePlayers(playerHands), HandParser.parseCardMask(boardCards), HandParser.parseCardMask(deadCards));
+	}
+
+	public Result calculate(Range[] ranges, long boardCards, long deadCards) {
+		Key key = canonical(ranges, boardCards, deadCards);
+		Result cached = get(key);
+		if (cached == null) {
+			misses.incrementAndGet();
+			cached = EquityCalculation.calculate(key.ranges, key.board, key.dead, evaluatorType);
+			put(key, cached);
+		} else {
+			hits.incrementAndGet();
+		}
+		// canonical player i is the caller's player key.order[i]
+		Result result = new Result(ranges);
+		result.setPlan(cached.getPlan());
+		result.setSeed(cached.getSeed());
+		for (int i = 0;i<ranges.length;i++){
+			int player = key.order[i];
+			result.setHandInfo(player, cached.getHandInfo(i).copy(ranges[player].toString()));
+		}
+		return result;
+	}
+
+	private synchronized Result get(Key key) {
+		CacheEntry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (timeToLive > 0 && System.nanoTime() - entry.created > timeToLive) {
+			entries.remove(key);
+			evictions.incrementAndGet();
+			return null;
+		}
+		return entry.result;
+	}
+
+	private synchronized void put(Key key, Result result) {
+		entries.put(key, new CacheEntry(result, System.nanoTime()));
+	}
+
+	/**
+	 * @return the smallest of all suit permutations of the query, with players sorted
+	 */
+	private static Key canonical(Range[] ranges, long board, long dead) {
+		Key best = null;
+		for (int permutation : SuitIsomorphism.ALL) {
+			long permutedBoard = SuitIsomorphism.permute(board, permutation);
+			long permutedDead = SuitIsomorphism.permute(dead, permutation);
+			// board and dead cards decide first, skip permutations that can not be smaller
+			if (best != null && compareCards(permutedBoard, permutedDead, best) > 0) {
+				continue;
+			}
+			final Range[] permuted = new Range[ranges.length];
+			Integer[] order = new Integer[ranges.length];
+			for (int i = 0;i<ranges.length;i++){
+				permuted[i] = ranges[i].permuteSuits(permutation);
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return permuted[a].compareTo(permuted[b]);
+				}
+			});
+			Key key = new Key(new Range[ranges.length], new int[ranges.length], permutedBoard, permutedDead);
+			for (int i = 0;i<ranges.length;i++){
+				key.ranges[i] = permuted[order[i]];
+				key.order[i] = order[i];
+			}
+			if (best == null || key.compareTo(best) < 0) {
+				best = key;
+			}
+		}
+		return best;
+	}
+
+	private static int compareCards(long board, long dead, Key key) {
+		int c = Long.compare(board, key.board);
+		return c != 0 ? c : Long.compare(dead, key.dead);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return entries removed because the cache was full or they expired
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * @return hits per query, 0 before the first query
+	 */
+	public double getHitRate() {
+		long total = hits.get() + misses.get();
+		return total == 0 ? 0 : (double) hits.get() / total;
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	/**
+	 * Canonical query, order maps canonical players to the caller's. Order is not part of equality.
+	 */
+	private static final class Key implements Comparable<Key> {
+
+		private final Range[] ranges;
+		private final int[] order;
+		private final long board;
+		private final long dead;
+
+		Key(Range[] ranges, int[] order, long board, long dead) {
+			this.ranges = ranges;
+			this.order = order;
+			this.board = board;
+			this.dead = dead;
+		}
+
+		public int compareTo(Key other) {
+			int c = compareCards(board, dead, other);
+			for (int i = 0;c == 0 && i<ranges.length;i++){
+				c = ranges[i].compareTo(other.ranges[i]);
+			}
+			return c;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return board == other.board && dead == other.dead && Arrays.equals(ranges, other.ranges);
+		}
+
+		@Override
+		public int hashCode() {
+			return Arrays.hashCode(ranges) * 31 + Long.valueOf(board * 31 + dead).hashCode();
+		}
+	}
+
+	private static final class CacheEntry {
+
+		private final Result result;
+		private final long created;
+
+		CacheEntry(Result result, long created) {
+			this.result = result;
+			this.created = created;
+		}
+	}
+}
@@ -3,11 +3,23 @@
  */
 package mi.poker.calculation;
 
-import mi.poker.common.model.testbed.klaatu.Card;
-import mi.poker.common.model.testbed.klaatu.CardSet;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.common.utils.CardMask;
 
 public class EquityCalculation {
 	
+	private static final CalculationPlanner PLANNER = new CalculationPlanner();
+	
 	/**
 	 * @param playerHands
 	 * all players hand's separated by ','
@@ -17,7 +29,117 @@ public class EquityCalculation {
 	 */
 	public static Result calculate(String playerHands, String boardCards,
 			String deadCards){
-		return getBestCalculation(playerHands, boardCards, deadCards).calculate(playerHands, boardCards, deadCards);
+		return calculate(playerHands, boardCards, deadCards, null);
+	}
+	
+	/**
+	 * Same as {@link #calculate(String, String, String)}, but evaluates hands with the given evaluator backend
+	 */
+	public static Result calculate(String playerHands, String boardCards,
+			String deadCards, EvaluatorType evaluatorType){
+		return calculate(EquityQuery.compile(playerHands, boardCards, deadCards), evaluatorType);
+	}
+	
+	/**
+	 * Same as {@link #calculate(String, String, String)} for a compiled query, nothing is parsed
+	 */
+	public static Result calculate(EquityQuery query){
+		return calculate(query, (EvaluatorType) null);
+	}
+	
+	/**
+	 * Same as {@link #calculate(String, String, String, EvaluatorType)} for a compiled query, nothing is parsed
+	 */
+	public static Result calculate(EquityQuery query, EvaluatorType evaluatorType){
+		return calculate(query.getRanges(), query.getBoardCards(), query.getDeadCards(), evaluatorType);
+	}
+	
+	/**
+	 * Same as {@link #calculate(String, String, String, EvaluatorType)} for already parsed input
+	 * @param boardCards board as a {@link CardMask}
+	 * @param deadCards dead cards as a {@link CardMask}
+	 * @param evaluatorType evaluator backend, null for the calculation's default
+	 */
+	public static Result calculate(Range[] ranges, long boardCards, long deadCards, EvaluatorType evaluatorType){
+		CalculationPlan plan = PLANNER.plan(ranges, boardCards, deadCards, evaluatorType);
+		Result result = plan.getCalculation().calculate(ranges, boardCards, deadCards);
+		result.setPlan(plan.getDescription());
+		return result;
+	}
+	
+	/**
+	 * Calculates on the common pool, see {@link #calculateAsync(EquityQuery, CancellationToken, Executor)}
+	 * @param timeout the result is ready about this time after the call
+	 */
+	public static CompletableFuture<Result> calculateAsync(EquityQuery query, long timeout, TimeUnit unit){
+		return calculateAsync(query, CancellationToken.withTimeout(timeout, unit), ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Calculates on the executor, see {@link #calculate(EquityQuery, CancellationToken)}.
+	 * Cancelling the future cancels the token, the calculation stops at its next check.
+	 */
+	public static CompletableFuture<Result> calculateAsync(final EquityQuery query, final CancellationToken token,
+			Executor executor){
+		final CompletableFuture<Result> future = CompletableFuture.supplyAsync(new Supplier<Result>() {
+			public Result get() {
+				return calculate(query, token);
+			}
+		}, executor);
+		future.whenComplete(new BiConsumer<Result, Throwable>() {
+			public void accept(Result result, Throwable error) {
+				if (future.isCancelled()) {
+					token.cancel();
+				}
+			}
+		});
+		return future;
+	}
+	
+	/**
+	 * Calculates within the deadline of the token. An exact calculation is planned for half of the time left,
+	 * if it does not finish in that time a Monte Carlo simulation runs until the deadline, its result has the
+	 * standard errors of the equities.
+	 * @throws CancellationException if the token is cancelled
+	 */
+	public static Result calculate(EquityQuery query, CancellationToken token){
+		Range[] ranges = query.getRanges();
+		long remaining = token.getRemainingNanos();
+		long exactBudget = Math.min(PLANNER.getBudgetNanos(), remaining / 2);
+		CalculationPlan plan = PLANNER.plan(ranges, query.getBoardCards(), query.getDeadCards(), null, exactBudget);
+		String fallback = plan.getDescription();
+		if (!(plan.getCalculation() instanceof MonteCarloSimulation)) {
+			Calculation calculation = plan.getCalculation();
+			if (calculation instanceof CancellableCalculation) {
+				((CancellableCalculation) calculation).setCancellationToken(token.child(exactBudget, TimeUnit.NANOSECONDS));
+			}
+			try {
+				Result result = calculation.calculate(ranges, query.getBoardCards(), query.getDeadCards());
+				result.setPlan(plan.getDescription());
+				return result;
+			} catch (CancellationException e) {
+				if (token.isCancelled()) {
+					throw e;
+				}
+				fallback = "monte carlo, " + plan.getDescription() + " did not finish";
+			}
+		}
+		MonteCarloSimulation simulation = new MonteCarloSimulation();
+		long budget = Math.max(1, Math.min(PLANNER.getBudgetNanos(), token.getRemainingNanos()));
+		simulation.setStoppingRule(StoppingRule.DEFAULT.withTimeBudget(budget, TimeUnit.NANOSECONDS));
+		simulation.setCancellationToken(token);
+		Result result = simulation.calculate(ranges, query.getBoardCards(), query.getDeadCards());
+		result.setPlan(fallback);
+		return result;
+	}
+	
+	/**
+	 * Calculates many queries together, queries with the same board and dead cards share the boards
+	 * @return result of every query, in the order of the queries
+	 * @see EquityBatch
+	 */
+	public static List<Result> calculate(List<EquityQuery> queries){
+		return new EquityBatch().calculate(queries);
 	}
 	
 	public static Result calculateMonteCarlo(String playerHands, String boardCards,
@@ -25,44 +147,54 @@ public class EquityCalculation {
 		return new MonteCarloSimulation().calculate(playerHands, boardCards, deadCards);
 	}
 	
+	public static Result calculateMonteCarlo(String playerHands, String boardCards,
+			String deadCards, EvaluatorType evaluatorType){
+		return new MonteCarloSimulation(evaluatorType).calculate(playerHands, boardCards, deadCards);
+	}
+	
+	/**
+	 * Monte Carlo simulation that runs until the stopping rule is met,
+	 * the standard error of the equities is reported in the {@link HandInfo}s
+	 */
+	public static Result calculateMonteCarlo(String playerHands, String boardCards,
+			String deadCards, StoppingRule stoppingRule){
+		MonteCarloSimulation simulation = new MonteCarloSimulation();
+		simulation.setStoppingRule(stoppingRule);
+		return simulation.calculate(playerHands, boardCards, deadCards);
+	}
+	
+	/**
+	 * Monte Carlo simulation split in {@code parallelism} parts running on the executor
+	 */
+	public static Result calculateMonteCarlo(String playerHands, String boardCards,
+			String deadCards, EvaluatorType evaluatorType, ExecutorService executor, int parallelism){
+		return new MonteCarloSimulation(evaluatorType, executor, parallelism).calculate(playerHands, boardCards, deadCards);
+	}
+	
 	public static Result calculateExhaustiveEnumration(String playerHands, String boardCards,
 			String deadCards){
 		return new ExhaustiveEnumeration().calculate(playerHands, boardCards, deadCards);
 	}
 	
+	public static Result calculateExhaustiveEnumration(String playerHands, String boardCards,
+			String deadCards, EvaluatorType evaluatorType){
+		return new ExhaustiveEnumeration(evaluatorType).calculate(playerHands, boardCards, deadCards);
+	}
+	
 	/**
-	 * Algorithm may work bad. Just simple implementation
-	 * @param playerHands
-	 * @param boardCards
-	 * @param deadCards
-	 * @return
+	 * Exhaustive enumeration split in subtrees running on the pool, gives exactly the single threaded result
 	 */
-	private static Calculation getBestCalculation(String playerHands, String boardCards,
-			String deadCards){
-		
-		CardSet[][] possibleHands = HandParser.parsePlayersHands(playerHands);
-		Card[] board = HandParser.parseCards(boardCards);
-		int playerVariations = 1;
-		int boardVariations = 5 - board.length;
-		for (int i = 0;i< possibleHands.length;i++){
-			playerVariations *= possibleHands[i].length;
-		}
-		
-		if (boardVariations == 5 || boardVariations == 4 || boardVariations == 3){
-			playerVariations *= 1000; // number from head
-		}
-		
-		if (boardVariations == 2){
-			playerVariations *= 700; // number from head
-		}
-		
-		if (boardVariations == 1){
-			playerVariations *= 50;
-		}
-		
-		boolean monteCarlo = playerVariations > 5000;
-		return monteCarlo ? new MonteCarloSimulation() : new ExhaustiveEnumeration(); 
-		
+	public static Result calculateExhaustiveEnumration(String playerHands, String boardCards,
+			String deadCards, EvaluatorType evaluatorType, ForkJoinPool pool){
+		return new ExhaustiveEnumeration(evaluatorType, pool).calculate(playerHands, boardCards, deadCards);
+	}
+	
+	/**
+	 * @return planner choosing the calculation of {@link #calculate(Range[], long, long, EvaluatorType)},
+	 * its budget and costs can be changed or {@link CalculationPlanner#calibrate() calibrated}
+	 */
+	public static CalculationPlanner getPlanner(){
+		return PLANNER;
 	}
 	
 }
@@ -0,0 +1,119 @@
+package mi.poker.calculation;
+
+import mi.poker.common.utils.CardMask;
+
+/**
+ * @author m1
+ * Parsed equity question: the range of every player, board and dead cards.
+ * <p>
+ * {@link #compile(String, String, String)} splits the players at ',' and parses each player's range with
+ * {@link Range#parse(String)}, so a range seen before comes from its cache. The query is checked as a whole:
+ * every player has a possible hand, the board has at most 5 cards and no card is both on the board and dead.
+ * Errors are {@link HandParseException}s with the position of the invalid character in the whole input. Queries
+ * are immutable, a query asked often is compiled once and calculated again without any parsing.
+ */
+public final class EquityQuery {
+
+	private final Range[] ranges;
+	private final long boardCards;
+	private final long deadCards;
+
+	/**
+	 * @param ranges range of every player
+	 * @param boardCards board as a {@link CardMask}
+	 * @param deadCards dead cards as a {@link CardMask}
+	 */
+	public EquityQuery(Range[] ranges, long boardCards, long deadCards) {
+		if (ranges.length == 0) {
+			throw new IllegalArgumentException("No players");
+		}
+		if (CardMask.size(boardCards) > 5 || (boardCards & deadCards) != 0) {
+			throw new IllegalArgumentException("Invalid board " + CardMask.toString(boardCards) + " or dead cards "
+					+ CardMask.toString(deadCards));
+		}
+		this.ranges = ranges.clone();
+		this.boardCards = boardCards;
+		this.deadCards = deadCards;
+	}
+
+	/**
+	 * @param playerHands ranges of all players separated by ',', see {@link HandParser#parsePlayersHands(String)}
+	 * @param boardCards board like "AdTs3h", null or empty before the flop
+	 * @param deadCards same format as the board, null or empty if there are none
+	 * @throws HandParseException at the first invalid character, in the string it is part of
+	 */
+	public static EquityQuery compile(String playerHands, String boardCards, String deadCards) {
+		long board = boardCards == null ? CardMask.EMPTY : HandParser.parseCardMask(boardCards, CardMask.EMPTY, 5);
+		long dead = deadCards == null ? CardMask.EMPTY : HandParser.parseCardMask(deadCards, board, 52);
+		int players = 1;
+		for (int i = 0;i<playerHands.length();i++){
+			if (playerHands.charAt(i) == ',') {
+				players++;
+			}
+		}
+		Range[] ranges = new Range[players];
+		int from = 0;
+		for (int i = 0;i<players;i++){
+			int to = playerHands.indexOf(',', from);
+			if (to < 0) {
+				to = playerHands.length();
+			}
+			try {
+				ranges[i] = Range.parse(playerHands.substring(from, to)); // cached, queries often repeat ranges
+			} catch (HandParseException e) {
+				throw e.within(playerHands, from);
+			}
+			if (ranges[i].removeDead(board | dead).isEmpty()) {
+				throw new HandParseException("No possible hand for player " + (i + 1), playerHands, from);
+			}
+			from = to + 1;
+		}
+		return new EquityQuery(ranges, board, dead);
+	}
+
+	/**
+	 * @return equity of the query by the calculation
+	 */
+	public Result calculate(Calculation calculation) {
+		return calculation.calculate(ranges.clone(), boardCards, deadCards);
+	}
+
+	/**
+	 * @return number of players
+	 */
+	public int size() {
+		return ranges.length;
+	}
+
+	public Range getRange(int player) {
+		return ranges[player];
+	}
+
+	/**
+	 * @return range of every player, a copy
+	 */
+	public Range[] getRanges() {
+		return ranges.clone();
+	}
+
+	public long getBoardCards() {
+		return boardCards;
+	}
+
+	public long getDeadCards() {
+		return deadCards;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		for (Range range : ranges) {
+			if (builder.length() > 0) {
+				builder.append(',');
+			}
+			builder.append(range);
+		}
+		return builder.append(" board ").append(CardMask.toString(boardCards))
+				.append(" dead ").append(CardMask.toString(deadCards)).toString();
+	}
+}
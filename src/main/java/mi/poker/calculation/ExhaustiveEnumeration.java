@@ -1,102 +1,505 @@
 package mi.poker.calculation;
 
-import java.util.LinkedList;
-import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-import mi.poker.common.model.testbed.klaatu.CardSet;
-import mi.poker.common.model.testbed.klaatu.HandEval;
-import mi.poker.common.utils.HandUtil;
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.common.evaluator.HandEvaluator;
+import mi.poker.common.model.testbed.klaatu.PartialStageFastEval;
+import mi.poker.common.utils.CardMask;
+import mi.poker.common.utils.SuitIsomorphism;
 /**
  * @author m1
+ * Evaluates every possible hand and board combination.
+ * <p>
+ * Deals that differ only by a permutation of suits have the same outcome, so only one canonical deal of every
+ * {@link SuitIsomorphism} orbit is evaluated and counted as many times as the orbit has deals. The group of suit
+ * permutations is narrowed at every dealt hand; the more symmetric the hands, board and dead cards are, the fewer
+ * deals are evaluated. Results are exactly the same as enumerating every deal.
+ * <p>
+ * With a {@link ForkJoinPool} the search tree is split into independent subtrees, first by the hands
+ * of the players, then by the first dealt board card. Every subtree is counted into its own
+ * {@link ResultAccumulator}, so the result is exactly the same as the single threaded one.
+ * <p>
+ * In incremental mode every player's cards are fed card by card into a {@link PartialStageFastEval} in the order
+ * the boards are dealt: hole cards once per deal, every board card once per loop level, so a board costs a single
+ * transducer lookup per player instead of a full evaluation.
  */
-public class ExhaustiveEnumeration implements Calculation {
+public class ExhaustiveEnumeration implements CancellableCalculation {
 
-	private CardSet[][] possibleHands;
-	private CardSet board;
-	private CardSet deadCards;
+	// subtrees with fewer games are enumerated by a single task
+	private static final long SPLIT_THRESHOLD = 20000;
+	// boards played between two checks of the cancellation token
+	private static final int CHECK_INTERVAL = 4096;
+
+	// canonical card index -> PartialStageFastEval card encoding
+	private static final int[] STAGE_CARDS = new int[52];
+	static {
+		for (int i = 0;i<52;i++){
+			STAGE_CARDS[i] = PartialStageFastEval.encode(i % 13, i / 13);
+		}
+	}
+
+	private long[][] possibleHands;
+	private long board;
+	private long deadCards;
 	private Result result;
+	private final EvaluatorType evaluatorType;
+	private final ForkJoinPool pool;
+	private boolean suitIsomorphism = true;
+	private boolean incremental = false;
+	private CancellationToken token;
+
+	/**
+	 * Enumeration with the HandEval evaluator
+	 */
+	public ExhaustiveEnumeration() {
+		this(EvaluatorType.HAND_EVAL);
+	}
+
+	/**
+	 * Single threaded enumeration, runs in the calling thread
+	 */
+	public ExhaustiveEnumeration(EvaluatorType evaluatorType) {
+		this(evaluatorType, null);
+	}
+
+	/**
+	 * @param pool runs the subtrees, null to run everything in the calling thread
+	 */
+	public ExhaustiveEnumeration(EvaluatorType evaluatorType, ForkJoinPool pool) {
+		this.evaluatorType = evaluatorType;
+		this.pool = pool;
+	}
 
 	public Result calculate(String playerHands, String boardCards,
 			String deadCards) {
-		result = new Result(playerHands);
-		this.possibleHands = HandParser.parsePlayersHands(playerHands);
-		this.board = HandUtil.mergeCards(HandParser.parseCards(boardCards));
-		this.deadCards = HandUtil.mergeCards(HandParser.parseCards(deadCards));
-
-		CardSet deck = CardSet.freshDeck();
-		deck.removeAll(board);
-		deck.removeAll(this.deadCards);
-		enumerate(0, new LinkedList<CardSet>(), deck); // starting enumeration from player 0
+		return calculate(Range.parsePlayers(playerHands), HandParser.parseCardMask(boardCards), HandParser.parseCardMask(deadCards));
+	}
+
+	/**
+	 * Range weights are not used, every combo is enumerated once
+	 */
+	public Result calculate(Range[] ranges, long boardCards, long deadCards) {
+		result = new Result(ranges);
+		this.board = boardCards;
+		this.deadCards = deadCards;
+		this.possibleHands = new long[ranges.length][];
+		for (int i = 0;i<ranges.length;i++){
+			possibleHands[i] = ranges[i].removeDead(boardCards | deadCards).masks();
+		}
+
+		long deck = CardMask.FULL_DECK & ~board & ~this.deadCards;
+		int[] group = symmetries();
+		ResultAccumulator accumulator;
+		if (pool == null) {
+			Enumerator enumerator = new Enumerator(evaluator(), possibleHands, board, incremental, token);
+			enumerator.enumerate(0, deck, 0, possibleHands[0].length, group, 1); // starting enumeration from player 0
+			accumulator = enumerator.accumulator;
+		} else {
+			ThreadLocal<HandEvaluator> evaluators = new ThreadLocal<HandEvaluator>() {
+				@Override
+				protected HandEvaluator initialValue() {
+					return evaluator();
+				}
+			};
+			accumulator = pool.invoke(new EnumerationTask(evaluators, incremental, token, possibleHands, board, 0,
+					new int[possibleHands.length * 2], deck, 0, possibleHands[0].length, group, 1));
+		}
+		accumulator.applyTo(result);
 		result.calculateStatistic();
 		return result;
 	}
 
 	/**
-	 * @param currentPlayer - number of player we deal cards
-	 * @param playersHands - other players hands
-	 * @param deck - deck
+	 * @return evaluator of the board showdowns, not used by the incremental mode
 	 */
-	private void enumerate(int currentPlayer, List<CardSet> playersHands,
-			CardSet deck) {
-		CardSet[] currentPossibleHands = possibleHands[currentPlayer]; // possible hands form player 'currentPlayer'
-		
-		for (int i =0;i<currentPossibleHands.length;i++) { // loop for all possible hands
-			if (!deck.contains(currentPossibleHands[i].get(0)) 
-					|| !deck.contains(currentPossibleHands[i].get(1))) { // if hand is impossible (no such cards in deck), then we took next one
-				continue;
+	private HandEvaluator evaluator() {
+		return incremental ? null : evaluatorType.create();
+	}
+
+	/**
+	 * @return suit permutations that keep board, dead cards and every player's hands in place
+	 */
+	private int[] symmetries() {
+		if (!suitIsomorphism) {
+			return SuitIsomorphism.IDENTITY;
+		}
+		int[] group = SuitIsomorphism.stabilizer(SuitIsomorphism.ALL, board);
+		group = SuitIsomorphism.stabilizer(group, deadCards);
+		for (long[] hands : possibleHands) {
+			group = SuitIsomorphism.stabilizer(group, hands);
+		}
+		return group;
+	}
+
+	/**
+	 * @return number of C(n, k) combinations
+	 */
+	private static long combinations(int n, int k) {
+		long c = 1;
+		for (int i = 0;i<k;i++){
+			c = c * (n - i) / (i + 1);
+		}
+		return c;
+	}
+
+	/**
+	 * Serial enumeration of a subtree
+	 */
+	private static final class Enumerator {
+
+		private final HandEvaluator evaluator;
+		private final long[][] possibleHands;
+		private final long board;
+		private final ResultAccumulator accumulator;
+
+		// enumeration state, card indexes
+		private final int[] holeCards; // two cards per player
+		private final int[] boardCards = new int[5];
+		private final int[] deckCards = new int[52];
+		private final int[] ranks;
+		// symmetries and weight of the boards being dealt
+		private int[] boardGroup;
+		private long weight;
+		// incremental mode, staged cards of every player, else null
+		private final PartialStageFastEval[] stages;
+		private final CancellationToken token;
+		private int countdown = CHECK_INTERVAL;
+
+		Enumerator(HandEvaluator evaluator, long[][] possibleHands, long board, boolean incremental, CancellationToken token) {
+			this.evaluator = evaluator;
+			this.token = token;
+			if (incremental) {
+				stages = new PartialStageFastEval[possibleHands.length];
+				for (int i = 0;i<stages.length;i++){
+					stages[i] = new PartialStageFastEval();
+				}
+			} else {
+				stages = null;
 			}
-			
-			playersHands.add(currentPossibleHands[i]); // this is our current hands for this player
-			deck.remove(currentPossibleHands[i].get(0)); // extract cards from deck
-			deck.remove(currentPossibleHands[i].get(1)); 
+			this.possibleHands = possibleHands;
+			this.board = board;
+			this.accumulator = new ResultAccumulator(possibleHands.length);
+			this.holeCards = new int[possibleHands.length * 2];
+			this.ranks = new int[possibleHands.length];
+		}
 
-			if (currentPlayer + 1 < possibleHands.length) { // if there is other player without dealt cards
-				enumerate(currentPlayer + 1, playersHands, deck); // deal cards to next player
+		/**
+		 * Deals hands from..to-1 to the current player, then recursively to next players and the board
+		 * @param currentPlayer - number of player we deal cards
+		 * @param deck - cards not dealt yet
+		 * @param group - suit permutations that keep everything dealt so far in place
+		 * @param weight - number of deals this one stands for
+		 */
+		void enumerate(int currentPlayer, long deck, int from, int to, int[] group, long weight) {
+			long[] currentPossibleHands = possibleHands[currentPlayer]; // possible hands form player 'currentPlayer'
+			
+			for (int i = from;i<to;i++) { // loop for all possible hands
+				long hand = currentPossibleHands[i];
+				if ((hand & deck) != hand) { // if hand is impossible (no such cards in deck), then we took next one
+					continue;
+				}
+				int orbit = group.length == 1 ? 1 : SuitIsomorphism.orbitSize(group, hand);
+				if (orbit == 0) { // suit permutation of another hand, counted with that one
+					continue;
+				}
+				int[] handGroup = orbit == 1 ? group : SuitIsomorphism.stabilizer(group, hand);
 				
-				playersHands.remove(currentPossibleHands[i]);
-				deck.add(currentPossibleHands[i].get(0));
-				deck.add(currentPossibleHands[i].get(1));
-				continue;
-			} else {
-				// if we are here it means all player are with cards, so we can enumerate board dealing
-				dealBoardAndPlay(playersHands, board,deck,0);
-				playersHands.remove(currentPossibleHands[i]);
-				deck.add(currentPossibleHands[i].get(0));
-				deck.add(currentPossibleHands[i].get(1));
+				holeCards[currentPlayer * 2] = CardMask.first(hand); // this is our current hands for this player
+				holeCards[currentPlayer * 2 + 1] = CardMask.first(CardMask.removeFirst(hand));
+
+				if (currentPlayer + 1 < possibleHands.length) { // if there is other player without dealt cards
+					enumerate(currentPlayer + 1, deck & ~hand, 0, possibleHands[currentPlayer + 1].length,
+							handGroup, weight * orbit); // deal cards to next player
+				} else {
+					// if we are here it means all player are with cards, so we can enumerate board dealing
+					dealBoards(deck & ~hand, 0, 52, handGroup, weight * orbit);
+				}
 			}
 		}
-	}
-	
-	private void dealBoardAndPlay(List<CardSet> playersHands, CardSet board, CardSet deck,int cardIndex){
-		if (board.size() == 5){ // if board is full
-			calculateResult(playersHands,board);
-			return;
+
+		/**
+		 * Deals all boards whose first dealt card is one of deck cards from..to-1
+		 * @param deck - cards not dealt yet
+		 */
+		void dealBoards(long deck, int from, int to, int[] group, long weight) {
+			this.boardGroup = group;
+			this.weight = weight;
+			int boardSize = CardMask.toIndexes(board, boardCards);
+			int deckSize = CardMask.toIndexes(deck, deckCards);
+			if (stages != null) {
+				dealStagedBoards(boardSize, from, to, deckSize);
+				return;
+			}
+			if (boardSize == 5) {
+				calculateResult();
+				return;
+			}
+			for (int i = from;i<Math.min(to, deckSize);i++){
+				boardCards[boardSize] = deckCards[i];
+				dealBoardAndPlay(boardSize + 1, i + 1, deckSize);
+			}
+		}
+
+		/**
+		 * Incremental mode of {@link #dealBoards(long, int, int, int[], long)}, stages hole cards and known board first
+		 */
+		private void dealStagedBoards(int boardSize, int from, int to, int deckSize) {
+			for (int i = 0;i<stages.length;i++){
+				stages[i].setCard1(STAGE_CARDS[holeCards[i * 2]]);
+				stages[i].setCard2(STAGE_CARDS[holeCards[i * 2 + 1]]);
+			}
+			for (int i = 0;i<Math.min(boardSize, 4);i++){
+				stage(i);
+			}
+			if (boardSize == 5) {
+				playStaged();
+				return;
+			}
+			for (int i = from;i<Math.min(to, deckSize);i++){
+				boardCards[boardSize] = deckCards[i];
+				if (boardSize == 4) {
+					playStaged();
+				} else {
+					stage(boardSize);
+					dealStagedBoard(boardSize + 1, i + 1, deckSize);
+				}
+			}
+		}
+
+		private void dealStagedBoard(int boardSize, int cardIndex, int deckSize) {
+			if (boardSize == 4) { // the innermost loop, one lookup per player and board
+				for (int i = cardIndex;i<deckSize;i++){
+					boardCards[4] = deckCards[i];
+					playStaged();
+				}
+				return;
+			}
+			for (int i = cardIndex;i<deckSize;i++){
+				boardCards[boardSize] = deckCards[i];
+				stage(boardSize);
+				dealStagedBoard(boardSize + 1, i + 1, deckSize);
+			}
+		}
+
+		/**
+		 * Feeds board card 0..3 into the stages of every player, after the two hole cards
+		 */
+		private void stage(int boardIndex) {
+			int card = STAGE_CARDS[boardCards[boardIndex]];
+			for (PartialStageFastEval stage : stages) {
+				switch (boardIndex) {
+				case 0: stage.setCard3(card); break;
+				case 1: stage.setCard4(card); break;
+				case 2: stage.setCard5(card); break;
+				default: stage.setCard6(card);
+				}
+			}
+		}
+
+		private void playStaged() {
+			long games = boardGames();
+			if (games == 0) {
+				return;
+			}
+			int card = STAGE_CARDS[boardCards[4]];
+			for (int i =0;i<ranks.length;i++){
+				ranks[i] = stages[i].setHand7(card); // 7 card equivalence classes, comparable with each other
+			}
+			accumulator.addGame(ranks, games);
 		}
-		int deckSize = deck.size();
-		for (int i = cardIndex;i<deckSize;i++){ 
-			board.add(deck.get(i));
-			if (board.size() != 5){
-				dealBoardAndPlay(playersHands,board,deck,i+1);
-				board.remove(deck.get(i));
-				continue;
+
+		private void dealBoardAndPlay(int boardSize, int cardIndex, int deckSize){
+			if (boardSize == 5){ // if board is full
+				calculateResult();
+				return;
+			}
+			for (int i = cardIndex;i<deckSize;i++){ 
+				boardCards[boardSize] = deckCards[i];
+				dealBoardAndPlay(boardSize + 1, i + 1, deckSize);
 			}
-			calculateResult(playersHands,board);
-			board.remove(deck.get(i));
+		}
+		
+		/**
+		 * @return number of deals the current board stands for, 0 if it is counted with another board
+		 */
+		private long boardGames() {
+			if (token != null && --countdown == 0) {
+				countdown = CHECK_INTERVAL;
+				token.check();
+			}
+			if (boardGroup.length == 1) {
+				return weight;
+			}
+			long boardMask = 0;
+			for (int card : boardCards) {
+				boardMask |= CardMask.bit(card);
+			}
+			return weight * SuitIsomorphism.orbitSize(boardGroup, boardMask); // 0 for a suit permutation of another board
+		}
+		
+		private void calculateResult(){
+			long games = boardGames();
+			if (games == 0) {
+				return;
+			}
+			// board is shared by all players, prepare it once
+			long boardState = evaluator.boardState(boardCards[0], boardCards[1], boardCards[2], boardCards[3], boardCards[4]);
+			for (int i =0;i<ranks.length;i++){
+				ranks[i] = evaluator.evaluate(boardState, holeCards[i * 2], holeCards[i * 2 + 1]);
+			}
+			accumulator.addGame(ranks, games);
 		}
 	}
-	
-	private void calculateResult(List<CardSet> playersHands, CardSet board){
-		for (int i =0;i<playersHands.size();i++){
-			result.getMap().get(i).setCurrentGameScore(HandEval.hand7Eval(HandUtil.mergeCardSet(board,playersHands.get(i))));
+
+	/**
+	 * Subtree of the enumeration. While players are dealt, from..to are hands of the current player,
+	 * after that from..to are positions of the first dealt board card in the deck.
+	 */
+	private static final class EnumerationTask extends RecursiveTask<ResultAccumulator> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ThreadLocal<HandEvaluator> evaluators;
+		private final boolean incremental;
+		private final CancellationToken token;
+		private final long[][] possibleHands;
+		private final long board;
+		private final int player;
+		private final int[] holeCards;
+		private final long deck;
+		private final int from;
+		private final int to;
+		private final int[] group;
+		private final long weight;
+
+		EnumerationTask(ThreadLocal<HandEvaluator> evaluators, boolean incremental, CancellationToken token,
+				long[][] possibleHands, long board, int player, int[] holeCards, long deck, int from, int to, int[] group,
+				long weight) {
+			this.evaluators = evaluators;
+			this.incremental = incremental;
+			this.token = token;
+			this.possibleHands = possibleHands;
+			this.board = board;
+			this.player = player;
+			this.holeCards = holeCards;
+			this.deck = deck;
+			this.from = from;
+			this.to = to;
+			this.group = group;
+			this.weight = weight;
+		}
+
+		@Override
+		protected ResultAccumulator compute() {
+			if (estimateGames() < SPLIT_THRESHOLD) {
+				return enumerateSerial();
+			}
+			if (to - from > 1) { // split the range in halves
+				int middle = (from + to) >>> 1;
+				EnumerationTask left = subtask(player, holeCards, deck, from, middle, group, weight);
+				left.fork();
+				ResultAccumulator accumulator = subtask(player, holeCards, deck, middle, to, group, weight).compute();
+				accumulator.merge(left.join());
+				return accumulator;
+			}
+			if (player == possibleHands.length) { // single first board card left, nothing to split
+				return enumerateSerial();
+			}
+			// single hand of the current player, deal it and split the next level
+			long hand = possibleHands[player][from];
+			int orbit = SuitIsomorphism.orbitSize(group, hand);
+			if ((hand & deck) != hand || orbit == 0) {
+				return new ResultAccumulator(possibleHands.length);
+			}
+			int[] cards = holeCards.clone();
+			cards[player * 2] = CardMask.first(hand);
+			cards[player * 2 + 1] = CardMask.first(CardMask.removeFirst(hand));
+			long nextDeck = deck & ~hand;
+			int next = player + 1;
+			int nextTo;
+			if (next < possibleHands.length) {
+				nextTo = possibleHands[next].length;
+			} else {
+				nextTo = CardMask.size(board) == 5 ? 1 : CardMask.size(nextDeck); // a full board is a single game
+			}
+			int[] handGroup = orbit == 1 ? group : SuitIsomorphism.stabilizer(group, hand);
+			return subtask(next, cards, nextDeck, 0, nextTo, handGroup, weight * orbit).compute();
+		}
+
+		private EnumerationTask subtask(int player, int[] holeCards, long deck, int from, int to, int[] group, long weight) {
+			return new EnumerationTask(evaluators, incremental, token, possibleHands, board, player, holeCards, deck, from, to,
+					group, weight);
+		}
+
+		/**
+		 * @return upper bound of games in this subtree
+		 */
+		private long estimateGames() {
+			long games = to - from;
+			int cards = CardMask.size(deck);
+			int missing = 5 - CardMask.size(board);
+			if (player < possibleHands.length) {
+				for (int i = player + 1;i<possibleHands.length;i++){
+					games *= possibleHands[i].length;
+				}
+				cards -= 2 * (possibleHands.length - player);
+			} else if (missing > 0) {
+				cards--; // the first card is from..to
+				missing--;
+			}
+			return games * combinations(cards, missing);
+		}
+
+		private ResultAccumulator enumerateSerial() {
+			Enumerator enumerator = new Enumerator(evaluators.get(), possibleHands, board, incremental, token);
+			System.arraycopy(holeCards, 0, enumerator.holeCards, 0, holeCards.length);
+			if (player < possibleHands.length) {
+				enumerator.enumerate(player, deck, from, to, group, weight);
+			} else {
+				enumerator.dealBoards(deck, from, to, group, weight);
+			}
+			return enumerator.accumulator;
 		}
-		result.applyGameResult();
 	}
 	
-	public CardSet[][] getPossibleHands() {
+	public boolean isSuitIsomorphism() {
+		return suitIsomorphism;
+	}
+
+	/**
+	 * @param suitIsomorphism false to evaluate every deal, useful only to check the symmetry reduction
+	 */
+	public void setSuitIsomorphism(boolean suitIsomorphism) {
+		this.suitIsomorphism = suitIsomorphism;
+	}
+
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * @param incremental true to evaluate boards card by card with {@link PartialStageFastEval},
+	 * the evaluator type is not used then
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	public CancellationToken getCancellationToken() {
+		return token;
+	}
+
+	public void setCancellationToken(CancellationToken token) {
+		this.token = token;
+	}
+
+	public long[][] getPossibleHands() {
 		return possibleHands;
 	}
 
-	public CardSet getBoard() {
+	public long getBoard() {
 		return board;
 	}
 
@@ -104,11 +507,11 @@ public class ExhaustiveEnumeration implements Calculation {
 		return result;
 	}
 
-	public void setPossibleHands(CardSet[][] possibleHands) {
+	public void setPossibleHands(long[][] possibleHands) {
 		this.possibleHands = possibleHands;
 	}
 
-	public void setBoard(CardSet board) {
+	public void setBoard(long board) {
 		this.board = board;
 	}
 
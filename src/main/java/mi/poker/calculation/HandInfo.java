@@ -1,26 +1,43 @@
 package mi.poker.calculation;
 
 import java.text.DecimalFormat;
+import java.util.Arrays;
 
 /**
  * @author m1
+ * Statistics of one player's hand, counters are {@code long} so exhaustive enumerations of wide ranges do not overflow
  */
 public class HandInfo {
 	
 	private double equity;
 	private double win;
 	private double tie;
-	private int potsWon;
-	private int potsTied;
+	private long potsWon;
+	private long potsTied;
 	private String hand;
-	private int totalGames;
+	private long totalGames;
 	private double potsWonTied;
+	// splitPots[winners] - pots split between 'winners' players, index 0 and 1 unused
+	private long[] splitPots = new long[2];
+	private double standardError; // 0 for exact results
 	private DecimalFormat df = new DecimalFormat("#.###");
 	
 	public HandInfo(String hand){
 		this.hand = hand;
 	}
 	
+	/**
+	 * @return copy of the counters and statistics under another hand name
+	 */
+	HandInfo copy(String hand){
+		HandInfo copy = new HandInfo(hand);
+		copy.addGames(totalGames, potsWon, potsTied, potsWonTied);
+		copy.splitPots = splitPots.clone();
+		copy.standardError = standardError;
+		copy.calculateStatistic();
+		return copy;
+	}
+	
 	public void calculateStatistic(){
 		win = (double)((double)potsWon  / (double)totalGames);
 		tie = (double)((double)potsTied / (double)totalGames);
@@ -45,10 +62,10 @@ public class HandInfo {
 	public double getTie() {
 		return tie;
 	}
-	public int getPotsWon() {
+	public long getPotsWon() {
 		return potsWon;
 	}
-	public int getPotsTied() {
+	public long getPotsTied() {
 		return potsTied;
 	}
 	public String getHand() {
@@ -63,10 +80,10 @@ public class HandInfo {
 	public void setTie(double tie) {
 		this.tie = tie;
 	}
-	public void setPotsWon(int potsWon) {
+	public void setPotsWon(long potsWon) {
 		this.potsWon = potsWon;
 	}
-	public void setPotsTied(int potsTied) {
+	public void setPotsTied(long potsTied) {
 		this.potsTied = potsTied;
 	}
 	public void setHand(String hand) {
@@ -78,10 +95,10 @@ public class HandInfo {
 	public void setCurrentGameScore(long currentGameScore) {
 		this.currentGameScore = currentGameScore;
 	}
-	public int getTotalGames() {
+	public long getTotalGames() {
 		return totalGames;
 	}
-	public void setTotalGames(int totalGames) {
+	public void setTotalGames(long totalGames) {
 		this.totalGames = totalGames;
 	}
 	public void increaseTotalGame(){
@@ -97,6 +114,52 @@ public class HandInfo {
 	public void increasePotsTied(){
 		potsTied++;
 	}
+	/**
+	 * @param winners number of players the pot was split between
+	 * @return number of pots split between that many players
+	 */
+	public long getSplitPots(int winners) {
+		return winners < splitPots.length ? splitPots[winners] : 0;
+	}
+	/**
+	 * Counts split pots by number of winners, {@link #getPotsTied()} and {@link #getPotsWonTied()} are not changed
+	 */
+	public void addSplitPots(int winners, long pots) {
+		if (winners >= splitPots.length) {
+			splitPots = Arrays.copyOf(splitPots, winners + 1);
+		}
+		splitPots[winners] += pots;
+	}
+	/**
+	 * Adds counters collected elsewhere, e.g. by a simulation thread
+	 */
+	public void addGames(long totalGames, long potsWon, long potsTied, double potsWonTied){
+		this.totalGames += totalGames;
+		this.potsWon += potsWon;
+		this.potsTied += potsTied;
+		this.potsWonTied += potsWonTied;
+	}
+	/**
+	 * @return standard error of the equity estimate, 0 if the equity is exact
+	 */
+	public double getStandardError() {
+		return standardError;
+	}
+	public void setStandardError(double standardError) {
+		this.standardError = standardError;
+	}
+	/**
+	 * @return lower bound of the 95% confidence interval of the equity
+	 */
+	public double getEquityLow() {
+		return Math.max(0, equity - 1.96 * standardError);
+	}
+	/**
+	 * @return upper bound of the 95% confidence interval of the equity
+	 */
+	public double getEquityHigh() {
+		return Math.min(1, equity + 1.96 * standardError);
+	}
 	public double getPotsWonTied() {
 		return potsWonTied;
 	}
@@ -0,0 +1,42 @@
+package mi.poker.calculation;
+
+/**
+ * @author m1
+ * Invalid hand, range or card input, with the position of the first invalid character
+ */
+public class HandParseException extends IllegalArgumentException {
+
+	private static final long serialVersionUID = 1L;
+
+	private final String reason;
+	private final String input;
+	private final int position;
+
+	public HandParseException(String reason, String input, int position) {
+		super(reason + " at position " + position + " of \"" + input + "\"");
+		this.reason = reason;
+		this.input = input;
+		this.position = position;
+	}
+
+	/**
+	 * @return the same error for a part of input that starts at offset
+	 */
+	HandParseException within(String input, int offset) {
+		return new HandParseException(reason, input, offset + position);
+	}
+
+	/**
+	 * @return the whole text that was parsed
+	 */
+	public String getInput() {
+		return input;
+	}
+
+	/**
+	 * @return index in {@link #getInput()} of the first invalid character, its length if the input ended too early
+	 */
+	public int getPosition() {
+		return position;
+	}
+}
@@ -1,12 +1,13 @@
 package mi.poker.calculation;
 
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.Set;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import mi.poker.common.model.testbed.klaatu.Card;
 import mi.poker.common.model.testbed.klaatu.CardSet;
-import mi.poker.common.utils.CollectionUtil;
+import mi.poker.common.model.testbed.klaatu.Rank;
+import mi.poker.common.model.testbed.klaatu.Suit;
+import mi.poker.common.utils.CardMask;
 import mi.poker.common.utils.HandUtil;
 
 import org.apache.commons.lang3.ArrayUtils;
@@ -41,6 +42,91 @@ public class HandParser {
 		return handsResult;
 	}
 	
+	/**
+	 * Same as {@link #parsePlayersHands(String)}, each hand as a {@link CardMask}
+	 * @return for every player all his possible hands
+	 */
+	public static long[][] parsePlayersHandMasks(String hands) {
+		Range[] ranges = Range.parsePlayers(hands);
+		long[][] result = new long[ranges.length][];
+		for (int i = 0; i < ranges.length; i++) {
+			result[i] = ranges[i].masks().clone();
+		}
+		return result;
+	}
+	
+	/**
+	 * @param cards format is only "AdTsJsQd3h", spaces are ignored
+	 * @return cards as a {@link CardMask}
+	 * @throws HandParseException if a card is invalid or repeated
+	 */
+	public static long parseCardMask(String cards){
+		return parseCardMask(cards, CardMask.EMPTY, 52);
+	}
+	
+	/**
+	 * Single pass over the characters, nothing is allocated unless the input is invalid
+	 * @param used cards that can not be in the input, e.g. the board when parsing dead cards
+	 * @param maxCards number of cards the input may have
+	 * @throws HandParseException at the first invalid, repeated or used card, or the first card above maxCards
+	 */
+	static long parseCardMask(String cards, long used, int maxCards){
+		long mask = CardMask.EMPTY;
+		int size = 0;
+		int length = cards.length();
+		for (int i = 0;i<length;i++){
+			char rank = cards.charAt(i);
+			if (rank == ' '){
+				continue;
+			}
+			int card = card(cards, i);
+			if ((mask & CardMask.bit(card)) != 0){
+				throw new HandParseException("Repeated card", cards, i);
+			}
+			if ((used & CardMask.bit(card)) != 0){
+				throw new HandParseException("Card already used", cards, i);
+			}
+			if (++size > maxCards){
+				throw new HandParseException("More than " + maxCards + " cards", cards, i);
+			}
+			mask |= CardMask.bit(card);
+			i++;
+		}
+		return mask;
+	}
+	
+	/**
+	 * @return index of the card written at position i, rank then suit like "Td"
+	 */
+	static int card(String input, int i){
+		int rank = rank(input.charAt(i));
+		if (rank < 0){
+			throw new HandParseException("Invalid rank '" + input.charAt(i) + "'", input, i);
+		}
+		if (i + 1 >= input.length()){
+			throw new HandParseException("Missing suit", input, i + 1);
+		}
+		int suit = suit(input.charAt(i + 1));
+		if (suit < 0){
+			throw new HandParseException("Invalid suit '" + input.charAt(i + 1) + "'", input, i + 1);
+		}
+		return suit*13 + rank;
+	}
+	
+	/**
+	 * @return rank 0..12 of the character, deuce to ace in either case, -1 if it is not a rank
+	 */
+	static int rank(char c){
+		return Rank.RANK_CHARS.indexOf(Character.toUpperCase(c));
+	}
+	
+	/**
+	 * @return suit 0..3 of the character in either case, -1 if it is not a suit
+	 */
+	static int suit(char c){
+		return Suit.SUIT_CHARS.indexOf(Character.toLowerCase(c));
+	}
+	
 	/**
 	 * @param  possible format is only "AdTsJsQd3h"
 	 * @return cards array
@@ -99,37 +185,46 @@ public class HandParser {
 		possibleCards = StringUtils.remove(possibleCards, " ");
 		String[] variants = StringUtils.split(possibleCards,'|');
 		
-		Set<CardSet> hands = new HashSet<CardSet>();
+		Map<Long, CardSet> hands = new LinkedHashMap<Long, CardSet>(); // hands by their card mask, drops duplicates
 		for (String variant : variants) {
 			int type = getType(variant);
 			switch (type) {
 				case EXACTLY_TYPE:// AhTs
 				{
 					CardSet hand = HandUtil.buildTwoCardHand(variant.substring(0, 2), variant.substring(2, 4));
-					hands.add(hand);
+					addHands(hands, hand);
 					break;
 				}
 	
 				case PATTERN_SUIT_TYPE: // "TQo"
 				{
-					CollectionUtil.addAll(hands, parsePatternSuit(variant));
+					addHands(hands, parsePatternSuit(variant));
 					break;
 				}
 				case RANGE_TYPE:// AJs+
 				{
-					CollectionUtil.addAll(hands,RangeStrategy.getDefaultRangeStrategy().getRange(variant));
+					addHands(hands,RangeStrategy.getDefaultRangeStrategy().getRange(variant));
                                         // clairement à modifier AJs+ n'est pas interprêté comme AKs, AQs et AJs !!
 					break;
 				}
 				case RANDOM_TYPE:{ 
-					CollectionUtil.addAll(hands,CardDistributionUtil.getAllPossibleHands());
+					addHands(hands,CardDistributionUtil.getAllPossibleHands());
 					break;
 				}
 			}
 		}
-		CardSet[] result = new CardSet[hands.size()];
-		CollectionUtil.fillArray(result, new LinkedList<CardSet>(hands));
-		return result;
+		return hands.values().toArray(new CardSet[hands.size()]);
+	}
+	
+	private static void addHands(Map<Long, CardSet> hands, CardSet... toAdd) {
+		for (CardSet hand : toAdd) {
+			if (hand != null) {
+				Long mask = CardMask.of(hand);
+				if (!hands.containsKey(mask)) {
+					hands.put(mask, hand);
+				}
+			}
+		}
 	}
 	
 	/**
@@ -3,143 +3,447 @@
  */
 package mi.poker.calculation;
 
-import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
-import mi.poker.common.model.testbed.klaatu.Card;
-import mi.poker.common.model.testbed.klaatu.CardSet;
-import mi.poker.common.model.testbed.klaatu.HandEval;
-import mi.poker.common.model.testbed.spears2p2.Hand;
-import mi.poker.common.model.testbed.spears2p2.StateTableEvaluator;
-import mi.poker.common.utils.HandUtil;
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.common.evaluator.HandEvaluator;
+import mi.poker.common.random.RandomType;
+import mi.poker.common.utils.CardMask;
 
-public class MonteCarloSimulation implements Calculation {
+public class MonteCarloSimulation implements CancellableCalculation {
+
+	public static final int DEFAULT_TRIALS = 1000000;
+	// trials of a substream, every worker runs one between two checks of the stopping rule
+	private static final int BATCH = 5000;
+	// a worker checks the cancellation token every CHECK_MASK + 1 trials
+	private static final int CHECK_MASK = 255;
+
+	private final EvaluatorType evaluatorType;
+	private final ExecutorService executor;
+	private final int parallelism;
+	private final Random seeds = new Random(); // seeds of the calculations without a set seed
+	private RandomType randomType = RandomType.XOROSHIRO;
+	private Long seed;
+	private StoppingRule stoppingRule = StoppingRule.DEFAULT;
+	private CancellationToken token;
+	private ResultListener listener;
+	private int snapshotTrials;
+	private long snapshotNanos;
+
+	/**
+	 * Simulation with the 2+2 state table evaluator
+	 */
+	public MonteCarloSimulation() {
+		this(EvaluatorType.STATE_TABLE);
+	}
+
+	/**
+	 * Single threaded simulation, runs in the calling thread
+	 */
+	public MonteCarloSimulation(EvaluatorType evaluatorType) {
+		this(evaluatorType, null, 1);
+	}
+
+	/**
+	 * Trials are split in {@code parallelism} parts, every part is run on the executor
+	 * with its own deck, evaluator and counters. Counters are merged into the {@link Result}
+	 * when all parts are done. Every 5000 trials have their own random substream whichever
+	 * part runs them, so the counters do not depend on the parallelism.
+	 * @param executor runs the parts, null to run everything in the calling thread
+	 * @param parallelism number of parts, usually number of cores
+	 */
+	public MonteCarloSimulation(EvaluatorType evaluatorType, ExecutorService executor, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+		}
+		this.evaluatorType = evaluatorType;
+		this.executor = executor;
+		this.parallelism = parallelism;
+	}
 
 	@Override
 	public Result calculate(String playerHands, String boardCards,
 			String deadCards) {
-		Result result = new Result(playerHands);
-		CardSet hands[][] = HandParser.parsePlayersHands(playerHands);// get all possible cards for players
-		CardSet currentHands[] = new CardSet[hands.length]; // actual hands for player will be stored here
+		return calculate(Range.parsePlayers(playerHands), HandParser.parseCardMask(boardCards), HandParser.parseCardMask(deadCards));
+	}
+
+	@Override
+	public Result calculate(Range[] ranges, long staticBoard, long deadCards) {
+		Result result = new Result(ranges);
+		RangeSampler samplers[] = new RangeSampler[ranges.length];// samplers of all possible cards for players
+		long currentHands[] = new long[ranges.length]; // actual hands for player will be stored here
 		// i need this list for random iterating over players, because there's no order which player should be dealt first
 		List<Integer> exactlyTypeId = new LinkedList<Integer>(); // when we always have same card
 		List<Integer> randomHandId = new LinkedList<Integer>();
-		for (int i = 0;i<hands.length;i++){
-			if (hands[i].length == 1){ // if only one hand is possible
-				exactlyTypeId.add(i);
-				currentHands[i] = hands[i][0];
-			}
-			if (hands[i].length == 1326) {
+		for (int i = 0;i<ranges.length;i++){
+			if (ranges[i].size() == Range.COMBOS && !ranges[i].isWeighted()) { // any two cards are dealt from the deck
 				randomHandId.add(i);
+				samplers[i] = new RangeSampler(ranges[i]);
+				continue;
+			}
+			Range live = ranges[i].removeDead(staticBoard | deadCards);
+			if (live.isEmpty()) {
+				throw new RuntimeException("No possible hand for player " + i + " " + ranges[i]);
 			}
+			if (live.size() == 1){ // if only one hand is possible
+				exactlyTypeId.add(i);
+				currentHands[i] = live.masks()[0];
+			}
+			samplers[i] = new RangeSampler(live);
 		}
 		List<Integer> orderList = new LinkedList<Integer>();
-		for (int i = 0;i<hands.length;i++) {
+		for (int i = 0;i<ranges.length;i++) {
 			if (!exactlyTypeId.contains(i) && !randomHandId.contains(i)){ // no need random order known and random
 				orderList.add(i); 
 			}
 		}
-		Card[] deadCardsArray = HandParser.parseCards(deadCards);
-		Card[] boardCardsArray = HandParser.parseCards(boardCards);
-		
-		CardSet staticBoard = new CardSet();
-		for (Card c : boardCardsArray){
-			staticBoard.add(c);
-		}
-		CardSet baseDeck = CardSet.freshDeck();
-		baseDeck.removeAll(deadCardsArray);// delete dead cards
-		baseDeck.removeAll(boardCardsArray); // delete board cards
+		long baseDeck = CardMask.FULL_DECK;
+		baseDeck &= ~deadCards;// delete dead cards
+		baseDeck &= ~staticBoard; // delete board cards
 		for (int j : exactlyTypeId){
-			baseDeck.remove(currentHands[j]);
+			baseDeck &= ~currentHands[j];
 		}
-//		return calculateMonteCarlo(orderList,randomHandId,baseDeck,currentHands,staticBoard,result,hands,1000000);// FIXME 1000000 ?
-		return calculateMonteCarloRayW(orderList,randomHandId,baseDeck,currentHands,staticBoard,result,hands,1000000);// FIXME 1000000 ?
+		return simulate(toArray(orderList),toArray(randomHandId),baseDeck,currentHands,staticBoard,result,samplers,stoppingRule);
 	}
 	
-	public Result calculateMonteCarlo(List<Integer> rangeHandId,List<Integer> randomHandId, CardSet baseDeck,
-			CardSet currentHands[], CardSet staticBoard, Result result,CardSet possibleHands[][] ,int trials) {
-		for (int i = 0;i<trials;i++){ // lets simulate
-			Collections.shuffle(rangeHandId);
-			CardSet currentDeck = new CardSet(baseDeck);
-			for (int j : rangeHandId){ // deal cards to range
-				currentHands[j]  = CardDistributionUtil.extractRandomPossibleCard(possibleHands[j], currentDeck);
+	/**
+	 * Runs the simulation, all cards are {@link CardMask}s. The trial loop does not allocate.
+	 * @param rangeHandId players with a range, they are dealt in random order
+	 * @param randomHandId players with any two cards, dealt after the ranges
+	 * @param baseDeck cards left after removing board, dead cards and known hands
+	 * @param currentHands known hands are already set, others are dealt here
+	 * @param staticBoard known board cards
+	 * @param possibleHands possible hands of every player
+	 */
+	public Result calculateMonteCarlo(int[] rangeHandId,int[] randomHandId, long baseDeck,
+			long currentHands[], long staticBoard, Result result,long possibleHands[][] ,int trials) {
+		return calculateMonteCarlo(rangeHandId, randomHandId, baseDeck, currentHands, staticBoard, result, possibleHands,
+				stoppingRule.withMaxTrials(trials));
+	}
+
+	/**
+	 * Same as {@link #calculateMonteCarlo(int[], int[], long, long[], long, Result, long[][], int)}, but runs
+	 * until the stopping rule is met. Trials run in rounds, the rule is checked after every round. The standard error
+	 * of every player's equity is stored in the {@link HandInfo}.
+	 */
+	public Result calculateMonteCarlo(int[] rangeHandId,int[] randomHandId, long baseDeck,
+			long currentHands[], long staticBoard, Result result,long possibleHands[][] ,StoppingRule rule) {
+		RangeSampler[] samplers = new RangeSampler[possibleHands.length];
+		for (int i = 0;i<possibleHands.length;i++){
+			samplers[i] = new RangeSampler(possibleHands[i]);
+		}
+		return simulate(rangeHandId, randomHandId, baseDeck, currentHands, staticBoard, result, samplers, rule);
+	}
+
+	private Result simulate(int[] rangeHandId,int[] randomHandId, long baseDeck,
+			long currentHands[], long staticBoard, Result result, RangeSampler samplers[], StoppingRule rule) {
+		long start = System.nanoTime();
+		int maxTrials = rule.getMaxTrials();
+		int parts = Math.max(1, Math.min(parallelism, maxTrials));
+		Worker[] workers = new Worker[parts];
+		for (int i = 0;i<parts;i++){
+			workers[i] = new Worker(evaluatorType.create(), rangeHandId, randomHandId,
+					baseDeck, currentHands, staticBoard, samplers, token);
+		}
+		long calculationSeed = seed != null ? seed : seeds.nextLong();
+		result.setSeed(calculationSeed);
+		Random streams = randomType.create(calculationSeed);
+		
+		int trials = 0;
+		ResultAccumulator total;
+		ResultAccumulator snapshot = null; // counters of the previous round, published while the next one runs
+		int snapshotAt = 0;
+		long snapshotTime = start;
+		while (true) {
+			int round = Math.min(maxTrials - trials, parts * BATCH);
+			for (int i = 0;i<parts;i++){
+				// substreams are taken in the order of the trials, only the last one may be shorter
+				int batch = Math.max(0, Math.min(BATCH, round - i * BATCH));
+				workers[i].setBatch(batch > 0 ? randomType.split(streams) : null, batch);
 			}
-			
-			for (int j : randomHandId){
-				currentHands[j]  = CardDistributionUtil.extractRandomPossibleCard(possibleHands[j], currentDeck);
+			List<Future<?>> running = start(workers);
+			if (snapshot != null) {
+				listener.resultUpdated(toResult(result.emptyCopy(), snapshot), false);
+				snapshot = null;
 			}
+			await(running);
+			trials += round;
 			
-			CardSet board = new CardSet(staticBoard);
-			
-			while (board.size() < 5) { // deal cards to board, if needed
-				board.add(currentDeck.dealCard());
-			}
-			// now calculate the result for eachPlayer
-			for (int z = 0;z<currentHands.length;z++){
-				result.getMap().get(z).setCurrentGameScore(HandEval.hand7Eval(HandUtil.mergeCardSet(board,currentHands[z]))); // saving hand strength
-/*				CardSet cards = HandUtil.mergeCardSet(board,currentHands[z]);
-                                int i0 = cards.get(0).hashCode();
-                                int i1 = cards.get(1).hashCode();
-                                int i2 = cards.get(2).hashCode();
-                                int i3 = cards.get(3).hashCode();
-                                int i4 = cards.get(4).hashCode();
-                                int i5 = cards.get(5).hashCode();
-                                int i6 = cards.get(6).hashCode();
-                                result.getMap().get(z).setCurrentGameScore(PartialStageFastEval.eval7(i0, i1, i2, i3, i4, i5, i6)); // saving hand strength
-*/			}
-			result.applyGameResult();
+			total = new ResultAccumulator(currentHands.length);
+			for (Worker worker : workers) {
+				total.merge(worker.getAccumulator());
+			}
+			if (trials >= maxTrials || converged(total, rule.getStandardError())) {
+				break;
+			}
+			if (rule.getTimeBudgetNanos() > 0 && System.nanoTime() - start >= rule.getTimeBudgetNanos()) {
+				break;
+			}
+			if (token != null) {
+				if (token.isCancelled()) {
+					throw new CancellationException("Calculation cancelled");
+				}
+				if (token.isExpired()) { // the trials so far are the result, with their standard errors
+					break;
+				}
+			}
+			// snapshots are taken between rounds, the trial loop never checks for them
+			if (listener != null && (trials - snapshotAt >= snapshotTrials || System.nanoTime() - snapshotTime >= snapshotNanos)) {
+				snapshot = total;
+				snapshotAt = trials;
+				snapshotTime = System.nanoTime();
+			}
 		}
+		if (listener != null) {
+			listener.resultUpdated(toResult(result.emptyCopy(), total), true);
+		}
+		return toResult(result, total);
+	}
+
+	/**
+	 * Fills the result with the counters, statistics and standard errors
+	 */
+	private static Result toResult(Result result, ResultAccumulator total) {
+		total.applyTo(result);
 		result.calculateStatistic();
+		for (int i = 0;i<total.getPlayers();i++){
+			result.getHandInfo(i).setStandardError(total.getStandardError(i));
+		}
 		return result;
 	}
 
-	public Result calculateMonteCarloRayW(List<Integer> rangeHandId,List<Integer> randomHandId, CardSet baseDeck,
-			CardSet currentHands[], CardSet staticBoard, Result result,CardSet possibleHands[][] ,int trials) {
-		
-            StateTableEvaluator.initialize();
-            
-            for (int i = 0;i<trials;i++){ // lets simulate
-			Collections.shuffle(rangeHandId);
-			CardSet currentDeck = new CardSet(baseDeck);
-			for (int j : rangeHandId){ // deal cards to range
-				currentHands[j]  = CardDistributionUtil.extractRandomPossibleCard(possibleHands[j], currentDeck);
+	private static boolean converged(ResultAccumulator accumulator, double standardError) {
+		if (standardError <= 0) {
+			return false;
+		}
+		for (int i = 0;i<accumulator.getPlayers();i++){
+			if (accumulator.getStandardError(i) > standardError) {
+				return false;
 			}
-			
-			for (int j : randomHandId){
-				currentHands[j]  = CardDistributionUtil.extractRandomPossibleCard(possibleHands[j], currentDeck);
+		}
+		return true;
+	}
+
+	/**
+	 * Starts a round of the workers
+	 * @return futures of the round, null when it already ran in the calling thread
+	 */
+	private List<Future<?>> start(Worker[] workers) {
+		if (executor == null || workers.length == 1) {
+			for (Worker worker : workers) {
+				worker.run();
 			}
-			
-			CardSet board = new CardSet(staticBoard);
-			
-			while (board.size() < 5) { // deal cards to board, if needed
-				board.add(currentDeck.dealCard());
-			}
-			// now calculate the result for eachPlayer
-			for (int z = 0;z<currentHands.length;z++){
-				CardSet cards = HandUtil.mergeCardSet(board,currentHands[z]);
-                                int i0 = cards.get(0).hashCode();
-                                int i1 = cards.get(1).hashCode();
-                                int i2 = cards.get(2).hashCode();
-                                int i3 = cards.get(3).hashCode();
-                                int i4 = cards.get(4).hashCode();
-                                int i5 = cards.get(5).hashCode();
-                                int i6 = cards.get(6).hashCode();
-                                Hand h = new Hand();
-                                h.addCard(i0);
-                                h.addCard(i1);
-                                h.addCard(i2);
-                                h.addCard(i3);
-                                h.addCard(i4);
-                                h.addCard(i5);
-                                h.addCard(i6);
-                                
-                                result.getMap().get(z).setCurrentGameScore(StateTableEvaluator.getRank(h)); // saving hand strength
-			}
-			result.applyGameResult();
+			return null;
+		}
+		List<Future<?>> futures = new LinkedList<Future<?>>();
+		for (Worker worker : workers) {
+			futures.add(executor.submit(worker));
+		}
+		return futures;
+	}
+
+	/**
+	 * Waits until the round started by {@link #start(Worker[])} is done
+	 */
+	private static void await(List<Future<?>> futures) {
+		if (futures == null) {
+			return;
+		}
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			for (Future<?> future : futures) {
+				future.cancel(true);
+			}
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Simulation interrupted", e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Simulation failed", e.getCause());
+		}
+	}
+
+	public int getTrials() {
+		return stoppingRule.getMaxTrials();
+	}
+
+	public void setTrials(int trials) {
+		this.stoppingRule = stoppingRule.withMaxTrials(trials);
+	}
+
+	public CancellationToken getCancellationToken() {
+		return token;
+	}
+
+	/**
+	 * @param token checked after every round of trials, the simulation stops with the trials so far when it expires
+	 */
+	public void setCancellationToken(CancellationToken token) {
+		this.token = token;
+	}
+
+	public ResultListener getResultListener() {
+		return listener;
+	}
+
+	/**
+	 * Publishes snapshots of the running simulation. Snapshots are taken between rounds of trials, so the
+	 * intervals are rounded up to whole rounds of {@code parallelism * 5000} trials; the trial loop is not slowed down.
+	 * @param listener gets a snapshot whenever either interval has passed since the last one, and the final
+	 * result; null to stop publishing
+	 * @param trials trials between two snapshots
+	 * @param interval time between two snapshots
+	 */
+	public void setResultListener(ResultListener listener, int trials, long interval, TimeUnit unit) {
+		if (trials <= 0 || interval <= 0) {
+			throw new IllegalArgumentException("Invalid snapshot interval " + trials + " trials or " + interval + " " + unit);
+		}
+		this.listener = listener;
+		this.snapshotTrials = trials;
+		this.snapshotNanos = unit.toNanos(interval);
+	}
+
+	public RandomType getRandomType() {
+		return randomType;
+	}
+
+	public void setRandomType(RandomType randomType) {
+		this.randomType = randomType;
+	}
+
+	public Long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * @param seed seed of every calculation, null for a new seed every time. The seed used is stored in the
+	 * {@link Result}; the same seed and number of trials give the same result at any parallelism. Time budgets,
+	 * standard error targets and tokens stop after a number of trials that depends on the timing and parallelism.
+	 */
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
+
+	public StoppingRule getStoppingRule() {
+		return stoppingRule;
+	}
+
+	public void setStoppingRule(StoppingRule stoppingRule) {
+		this.stoppingRule = stoppingRule;
+	}
+
+	private static int[] toArray(List<Integer> list) {
+		int[] result = new int[list.size()];
+		int i = 0;
+		for (int value : list) {
+			result[i++] = value;
 		}
-		result.calculateStatistic();
 		return result;
 	}
 
+	/**
+	 * One part of the simulation. Owns everything it writes to, so workers never share mutable state.
+	 */
+	private static final class Worker implements Runnable {
+
+		private final HandEvaluator evaluator;
+		private final int[] rangeOrder;
+		private final int[] rangeHandId;
+		private final int[] randomHandId;
+		private final long baseDeck;
+		private final long[] currentHands;
+		private final RangeSampler[] samplers;
+		private final CancellationToken token;
+		private Random random;
+		private int batch;
+
+		// any two cards and the board are dealt from the deck, the known board cards come first
+		private final Deck deck;
+		private final int[] board = new int[5];
+		private final int staticSize;
+		private final int[] ranks;
+		private final ResultAccumulator accumulator;
+
+		Worker(HandEvaluator evaluator, int[] rangeHandId, int[] randomHandId, long baseDeck,
+				long[] currentHands, long staticBoard, RangeSampler[] samplers, CancellationToken token) {
+			this.evaluator = evaluator;
+			this.rangeOrder = rangeHandId;
+			this.rangeHandId = rangeHandId.clone(); // shuffled in place
+			this.randomHandId = randomHandId;
+			this.baseDeck = baseDeck;
+			this.currentHands = currentHands.clone(); // dealt in place
+			this.samplers = samplers;
+			this.token = token;
+			this.ranks = new int[currentHands.length];
+			this.accumulator = new ResultAccumulator(currentHands.length);
+			this.deck = new Deck(baseDeck);
+			this.staticSize = CardMask.toIndexes(staticBoard, board);
+		}
+
+		/**
+		 * @param random substream of the trials
+		 * @param batch number of trials the next {@link #run()} runs
+		 */
+		void setBatch(Random random, int batch) {
+			this.random = random;
+			this.batch = batch;
+		}
+
+		@Override
+		public void run() {
+			// a substream deals the same cards whichever worker runs it
+			System.arraycopy(rangeOrder, 0, rangeHandId, 0, rangeOrder.length);
+			deck.restore();
+			for (int i = 0;i<batch;i++){ // lets simulate
+				if ((i & CHECK_MASK) == CHECK_MASK && token != null && (token.isExpired() || token.isCancelled())) {
+					return; // the round ends early, the simulation stops after it
+				}
+				shuffle(rangeHandId);
+				long currentDeck = baseDeck;
+				for (int j : rangeHandId){ // deal cards to range
+					currentHands[j] = samplers[j].sample(currentDeck, random);
+					currentDeck &= ~currentHands[j];
+				}
+				
+				// the deck still holds the range hands, they are skipped
+				long used = baseDeck & ~currentDeck;
+				deck.reset();
+				for (int j : randomHandId){
+					currentHands[j] = CardMask.bit(deck.deal(used, random)) | CardMask.bit(deck.deal(used, random));
+				}
+				for (int j = staticSize;j<5;j++){ // deal cards to board, if needed
+					board[j] = deck.deal(used, random);
+				}
+				// prepare the board once, then finish each player with his two hole cards
+				long boardState = evaluator.boardState(board[0], board[1], board[2], board[3], board[4]);
+				for (int z = 0;z<currentHands.length;z++){
+					long hand = currentHands[z];
+					ranks[z] = evaluator.evaluate(boardState, CardMask.first(hand), CardMask.first(CardMask.removeFirst(hand)));
+				}
+				accumulator.addGame(ranks);
+			}
+		}
+
+		// Fisher-Yates in place
+		private void shuffle(int[] array) {
+			for (int i = array.length - 1;i>0;i--){
+				int j = random.nextInt(i + 1);
+				int tmp = array[i];
+				array[i] = array[j];
+				array[j] = tmp;
+			}
+		}
+
+		ResultAccumulator getAccumulator() {
+			return accumulator;
+		}
+	}
 }
@@ -0,0 +1,241 @@
+package mi.poker.calculation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import mi.poker.common.model.testbed.spears2p2.StateTableEvaluator;
+
+/**
+ * @author m1
+ * Computes the {@link PreflopEquityTable}. Every suit-canonical matchup is enumerated over all 1,712,304 boards
+ * with the 2+2 state table, matchups are split between the threads of a {@link ForkJoinPool}.
+ * <p>
+ * Usage: {@code java mi.poker.calculation.PreflopEquityGenerator [file]}
+ */
+public class PreflopEquityGenerator {
+
+	private static final int MATCHUPS_PER_TASK = 16;
+
+	private final ForkJoinPool pool;
+
+	public PreflopEquityGenerator() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public PreflopEquityGenerator(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	public static void main(String[] args) throws IOException {
+		File file = new File(args.length > 0 ? args[0] : PreflopEquityTable.FILE_NAME);
+		long start = System.currentTimeMillis();
+		new PreflopEquityGenerator().generate(file);
+		System.out.println(file + " generated in " + (System.currentTimeMillis() - start) / 1000 + " seconds");
+	}
+
+	public void generate(File file) throws IOException {
+		generate(file, matchupKeys());
+	}
+
+	/**
+	 * Generates a table of only some matchups, e.g. for tests. Queries with other hands can not be answered
+	 * from it, class matchups are stored only when all of their hands are.
+	 * @param matchups two hands or ranges separated by ',', all their matchups are enumerated
+	 */
+	public void generate(File file, String... matchups) throws IOException {
+		Set<Integer> keys = new TreeSet<Integer>();
+		for (String matchup : matchups) {
+			Range[] ranges = Range.parsePlayers(matchup);
+			if (ranges.length != 2) {
+				throw new IllegalArgumentException("Matchup of 2 players expected: " + matchup);
+			}
+			for (int hand1 : ranges[0].combos()) {
+				for (int hand2 : ranges[1].combos()) {
+					if ((Range.comboMask(hand1) & Range.comboMask(hand2)) == 0) {
+						keys.add(PreflopEquityTable.matchupKey(PreflopEquityTable.firstCard(hand1), PreflopEquityTable.secondCard(hand1),
+								PreflopEquityTable.firstCard(hand2), PreflopEquityTable.secondCard(hand2)) >>> 1);
+					}
+				}
+			}
+		}
+		int[] sorted = new int[keys.size()];
+		int n = 0;
+		for (int key : keys) {
+			sorted[n++] = key;
+		}
+		generate(file, sorted);
+	}
+
+	private void generate(File file, int[] keys) throws IOException {
+		StateTableEvaluator.initialize();
+		int[] wins = new int[keys.length];
+		int[] ties = new int[keys.length];
+		pool.invoke(new MatchupTask(keys, wins, ties, 0, keys.length));
+		PreflopEquityTable.write(file, keys, wins, ties, classMatchups(keys, wins, ties));
+	}
+
+	/**
+	 * @return sorted keys of all suit-canonical matchups
+	 */
+	static int[] matchupKeys() {
+		int[] keys = new int[PreflopEquityTable.HANDS * PreflopEquityTable.HANDS];
+		int n = 0;
+		for (int hand1 = 0;hand1<PreflopEquityTable.HANDS;hand1++){
+			for (int hand2 = 0;hand2<PreflopEquityTable.HANDS;hand2++){
+				int a1 = PreflopEquityTable.firstCard(hand1);
+				int a2 = PreflopEquityTable.secondCard(hand1);
+				int b1 = PreflopEquityTable.firstCard(hand2);
+				int b2 = PreflopEquityTable.secondCard(hand2);
+				if (a1 == b1 || a1 == b2 || a2 == b1 || a2 == b2) {
+					continue;
+				}
+				int key = PreflopEquityTable.matchupKey(a1, a2, b1, b2) >>> 1;
+				if (key == hand1 * PreflopEquityTable.HANDS + hand2) { // the pair is its own canonical form
+					keys[n++] = key;
+				}
+			}
+		}
+		return Arrays.copyOf(keys, n); // generated in increasing order
+	}
+
+	/**
+	 * Sums every hand class matchup over its hands, class matchups with a hand matchup missing from keys stay 0
+	 */
+	static int[] classMatchups(int[] keys, int[] wins, int[] ties) {
+		int[] classes = new int[PreflopEquityTable.CLASSES * PreflopEquityTable.CLASSES * 3];
+		boolean[] missing = new boolean[PreflopEquityTable.CLASSES * PreflopEquityTable.CLASSES];
+		for (int hand1 = 0;hand1<PreflopEquityTable.HANDS;hand1++){
+			for (int hand2 = 0;hand2<PreflopEquityTable.HANDS;hand2++){
+				int a1 = PreflopEquityTable.firstCard(hand1);
+				int a2 = PreflopEquityTable.secondCard(hand1);
+				int b1 = PreflopEquityTable.firstCard(hand2);
+				int b2 = PreflopEquityTable.secondCard(hand2);
+				if (a1 == b1 || a1 == b2 || a2 == b1 || a2 == b2) {
+					continue;
+				}
+				int key = PreflopEquityTable.matchupKey(a1, a2, b1, b2);
+				int id = Arrays.binarySearch(keys, key >>> 1);
+				int matchup = PreflopEquityTable.classIndex(a1, a2) * PreflopEquityTable.CLASSES + PreflopEquityTable.classIndex(b1, b2);
+				if (id < 0) {
+					missing[matchup] = true;
+					continue;
+				}
+				int win = wins[id];
+				if ((key & 1) != 0) {
+					win = PreflopEquityTable.BOARDS - win - ties[id];
+				}
+				int i = matchup * 3;
+				classes[i] += win;
+				classes[i + 1] += ties[id];
+				classes[i + 2] += PreflopEquityTable.BOARDS;
+			}
+		}
+		for (int matchup = 0;matchup<missing.length;matchup++){
+			if (missing[matchup]) {
+				Arrays.fill(classes, matchup * 3, matchup * 3 + 3, 0);
+			}
+		}
+		return classes;
+	}
+
+	/**
+	 * Enumerates all boards of one matchup
+	 * @param result receives boards won by the first hand at 0 and split boards at 1
+	 */
+	static void enumerate(int key, IntBuffer handRanks, int[] result) {
+		int hand1 = key / PreflopEquityTable.HANDS;
+		int hand2 = key % PreflopEquityTable.HANDS;
+		int a1 = PreflopEquityTable.firstCard(hand1);
+		int a2 = PreflopEquityTable.secondCard(hand1);
+		int b1 = PreflopEquityTable.firstCard(hand2);
+		int b2 = PreflopEquityTable.secondCard(hand2);
+
+		// state table card numbers of the deck
+		int[] deck = new int[48];
+		int n = 0;
+		for (int card = 0;card<52;card++){
+			if (card != a1 && card != a2 && card != b1 && card != b2) {
+				deck[n++] = stateTableCard(card);
+			}
+		}
+		int s1 = handRanks.get(handRanks.get(StateTableEvaluator.START_STATE + stateTableCard(a1)) + stateTableCard(a2));
+		int s2 = handRanks.get(handRanks.get(StateTableEvaluator.START_STATE + stateTableCard(b1)) + stateTableCard(b2));
+
+		int wins = 0;
+		int ties = 0;
+		for (int c1 = 0;c1<44;c1++){
+			int s1c1 = handRanks.get(s1 + deck[c1]);
+			int s2c1 = handRanks.get(s2 + deck[c1]);
+			for (int c2 = c1 + 1;c2<45;c2++){
+				int s1c2 = handRanks.get(s1c1 + deck[c2]);
+				int s2c2 = handRanks.get(s2c1 + deck[c2]);
+				for (int c3 = c2 + 1;c3<46;c3++){
+					int s1c3 = handRanks.get(s1c2 + deck[c3]);
+					int s2c3 = handRanks.get(s2c2 + deck[c3]);
+					for (int c4 = c3 + 1;c4<47;c4++){
+						int s1c4 = handRanks.get(s1c3 + deck[c4]);
+						int s2c4 = handRanks.get(s2c3 + deck[c4]);
+						for (int c5 = c4 + 1;c5<48;c5++){
+							// after the 7th card the state is the hand value
+							int rank1 = handRanks.get(s1c4 + deck[c5]);
+							int rank2 = handRanks.get(s2c4 + deck[c5]);
+							if (rank1 > rank2) {
+								wins++;
+							} else if (rank1 == rank2) {
+								ties++;
+							}
+						}
+					}
+				}
+			}
+		}
+		result[0] = wins;
+		result[1] = ties;
+	}
+
+	// canonical card index -> state table card number 1..52
+	private static int stateTableCard(int card) {
+		return (card % 13) * 4 + card / 13 + 1;
+	}
+
+	private static final class MatchupTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int[] keys;
+		private final int[] wins;
+		private final int[] ties;
+		private final int from;
+		private final int to;
+
+		MatchupTask(int[] keys, int[] wins, int[] ties, int from, int to) {
+			this.keys = keys;
+			this.wins = wins;
+			this.ties = ties;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > MATCHUPS_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new MatchupTask(keys, wins, ties, from, middle), new MatchupTask(keys, wins, ties, middle, to));
+				return;
+			}
+			IntBuffer handRanks = StateTableEvaluator.handRanks.duplicate();
+			int[] result = new int[2];
+			for (int i = from;i<to;i++){
+				enumerate(keys[i], handRanks, result);
+				wins[i] = result[0];
+				ties[i] = result[1];
+			}
+		}
+	}
+}
@@ -0,0 +1,405 @@
+package mi.poker.calculation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import mi.poker.common.utils.AtomicFile;
+import mi.poker.common.utils.CardMask;
+import mi.poker.common.utils.SuitIsomorphism;
+
+/**
+ * @author m1
+ * Exact heads-up preflop results: for every pair of non-conflicting hands the number of the 1,712,304 boards
+ * won by the first hand and the number of split boards.
+ * <p>
+ * Only one matchup of every {@link SuitIsomorphism} class is stored, a query is mapped to its class by permuting suits.
+ * The 169x169 hand class matchups (AKs vs QQ, ...) are stored as sums over their hands. The file is written by
+ * {@link PreflopEquityGenerator}, everything little-endian:
+ * <PRE>
+ * offset  0  int   magic "PFEQ"
+ * offset  4  int   format version
+ * offset  8  int   number of matchups n
+ * offset 12  int   reserved, always 0
+ * offset 16  long  CRC32 of everything after the header
+ * offset 24  int[n] matchup keys, sorted
+ * then       int[n] boards won by the first hand
+ * then       int[n] split boards
+ * then       int[169*169*3] class matchups: boards won, split boards, all boards
+ * </PRE>
+ */
+public final class PreflopEquityTable implements Calculation {
+
+	public static final String FILE_NAME = "preflopEquity.bin";
+	/**
+	 * Number of two card hands
+	 */
+	public static final int HANDS = 1326;
+	/**
+	 * Number of hand classes, pairs, suited and offsuit hands
+	 */
+	public static final int CLASSES = 169;
+	/**
+	 * Number of boards of every matchup, C(48,5)
+	 */
+	public static final int BOARDS = 1712304;
+
+	static final int MAGIC = 0x51454650; // "PFEQ" in little-endian
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 24;
+
+	// hand index -> the two cards and the class
+	private static final int[] FIRST_CARD = new int[HANDS];
+	private static final int[] SECOND_CARD = new int[HANDS];
+	private static final int[] HAND_CLASS = new int[HANDS];
+	// class -> number of its hands, 6 for pairs, 4 for suited, 12 for offsuit hands
+	private static final int[] CLASS_SIZE = new int[CLASSES];
+	static {
+		for (int b = 1;b<52;b++){
+			for (int a = 0;a<b;a++){
+				FIRST_CARD[handIndex(a, b)] = a;
+				SECOND_CARD[handIndex(a, b)] = b;
+				HAND_CLASS[handIndex(a, b)] = classIndex(a, b);
+				CLASS_SIZE[classIndex(a, b)]++;
+			}
+		}
+	}
+
+	private static PreflopEquityTable defaultTable;
+	private static boolean defaultLoaded;
+
+	private final int size;
+	private final IntBuffer keys;
+	private final IntBuffer wins;
+	private final IntBuffer ties;
+	private final IntBuffer classes;
+
+	private PreflopEquityTable(IntBuffer entries, int size) {
+		this.size = size;
+		this.keys = slice(entries, 0, size);
+		this.wins = slice(entries, size, size);
+		this.ties = slice(entries, 2 * size, size);
+		this.classes = slice(entries, 3 * size, CLASSES * CLASSES * 3);
+	}
+
+	/**
+	 * @return table from {@link #FILE_NAME} in the working directory, null if there is no such file
+	 */
+	public static synchronized PreflopEquityTable getDefault() {
+		if (!defaultLoaded) {
+			defaultLoaded = true;
+			File file = new File(FILE_NAME);
+			if (file.exists()) {
+				try {
+					defaultTable = map(file);
+				} catch (IOException e) {
+					System.out.println("Preflop equity table not loaded: " + e.getMessage());
+				}
+			}
+		}
+		return defaultTable;
+	}
+
+	/**
+	 * Maps the table read-only, the checksum is always verified
+	 * @throws IOException if the file is truncated, has a wrong header or a wrong checksum
+	 */
+	public static PreflopEquityTable map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length < HEADER_SIZE) {
+				throw new IOException(file + " is too short to be a preflop equity table");
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			if (mapped.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a preflop equity table");
+			}
+			if (mapped.getInt(4) != VERSION) {
+				throw new IOException(file + " has unsupported version " + mapped.getInt(4));
+			}
+			int size = mapped.getInt(8);
+			if (length != HEADER_SIZE + 4L * (3L * size + CLASSES * CLASSES * 3)) {
+				throw new IOException(file + " has " + size + " matchups in " + length + " bytes");
+			}
+			mapped.position(HEADER_SIZE);
+			ByteBuffer payload = mapped.slice().order(ByteOrder.LITTLE_ENDIAN);
+			CRC32 crc = new CRC32();
+			crc.update(payload.duplicate());
+			if (crc.getValue() != mapped.getLong(16)) {
+				throw new IOException(file + " is corrupted, checksum mismatch");
+			}
+			return new PreflopEquityTable(payload.asIntBuffer(), size);
+		} finally {
+			raf.close(); // the mapping stays valid after the channel is closed
+		}
+	}
+
+	/**
+	 * Writes the table through {@link AtomicFile}, concurrent first runs never see a half written table
+	 * @param keys sorted matchup keys, see {@link #matchupKey(int, int, int, int)}
+	 * @param wins boards won by the first hand of every matchup
+	 * @param ties split boards of every matchup
+	 * @param classes class matchups, 3 ints per matchup of class i vs class j at (i * 169 + j) * 3
+	 */
+	static void write(File file, int[] keys, int[] wins, int[] ties, int[] classes) throws IOException {
+		final ByteBuffer payload = ByteBuffer.allocate(4 * (3 * keys.length + classes.length)).order(ByteOrder.LITTLE_ENDIAN);
+		payload.asIntBuffer().put(keys).put(wins).put(ties).put(classes);
+		CRC32 crc = new CRC32();
+		crc.update(payload.array());
+
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(keys.length).putInt(0).putLong(crc.getValue());
+		header.flip();
+
+		AtomicFile.write(file, new AtomicFile.Content() {
+			@Override
+			public void writeTo(FileChannel channel) throws IOException {
+				while (header.hasRemaining()) {
+					channel.write(header);
+				}
+				while (payload.hasRemaining()) {
+					channel.write(payload);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Same as {@link #calculate(String)}, board and dead cards must be empty
+	 */
+	public Result calculate(String playerHands, String boardCards, String deadCards) {
+		return calculate(Range.parsePlayers(playerHands), HandParser.parseCardMask(boardCards), HandParser.parseCardMask(deadCards));
+	}
+
+	/**
+	 * Same as {@link #calculate(Range[])}, board and dead cards must be empty
+	 */
+	public Result calculate(Range[] ranges, long boardCards, long deadCards) {
+		if (boardCards != CardMask.EMPTY || deadCards != CardMask.EMPTY) {
+			throw new RuntimeException("Preflop table can not be used with board or dead cards");
+		}
+		return calculate(ranges);
+	}
+
+	/**
+	 * Calculates heads-up preflop equity, hands may be ranges. The result is exactly the same as
+	 * {@link ExhaustiveEnumeration} gives.
+	 * @param playerHands two hands separated by ','
+	 */
+	public Result calculate(String playerHands) {
+		return calculate(Range.parsePlayers(playerHands));
+	}
+
+	/**
+	 * Calculates heads-up preflop equity of two ranges, weights are not used.
+	 * <p>
+	 * Hand classes a range holds completely (all of AKs, ...) are summed from the class matchups, card removal
+	 * between their hands is already counted there. Only the other hands are looked up one matchup at a time.
+	 */
+	public Result calculate(Range[] ranges) {
+		if (ranges.length != 2) {
+			throw new RuntimeException("Preflop table is for 2 players, got " + ranges.length);
+		}
+		ResultAccumulator accumulator = new ResultAccumulator(2);
+		boolean[] full1 = fullClasses(ranges[0]);
+		boolean[] full2 = fullClasses(ranges[1]);
+		boolean complete = true; // every class matchup of full classes is stored
+		for (int class1 = 0;class1<CLASSES;class1++){
+			for (int class2 = 0;full1[class1] && class2<CLASSES;class2++){
+				int i = (class1 * CLASSES + class2) * 3;
+				if (!full2[class2]) {
+					continue;
+				}
+				if (classes.get(i + 2) == 0) { // a partial table does not have the class matchup
+					complete = false;
+				} else {
+					accumulator.addHeadsUp(classes.get(i + 2), classes.get(i), classes.get(i + 1));
+				}
+			}
+		}
+		int[] combos2 = ranges[1].combos();
+		int[] partial2 = new int[combos2.length]; // second range hands of classes it does not hold completely
+		int partialSize = 0;
+		for (int hand2 : combos2) {
+			if (!full2[HAND_CLASS[hand2]]) {
+				partial2[partialSize++] = hand2;
+			}
+		}
+		for (int hand1 : ranges[0].combos()) {
+			int class1 = HAND_CLASS[hand1];
+			if (full1[class1] && complete) { // only the hands of partial classes are left
+				for (int i = 0;i<partialSize;i++){
+					addMatchup(accumulator, hand1, partial2[i]);
+				}
+				continue;
+			}
+			for (int hand2 : combos2) {
+				int class2 = HAND_CLASS[hand2];
+				if (!full1[class1] || !full2[class2] || classes.get((class1 * CLASSES + class2) * 3 + 2) == 0) {
+					addMatchup(accumulator, hand1, hand2);
+				}
+			}
+		}
+		Result result = new Result(ranges);
+		accumulator.applyTo(result);
+		result.calculateStatistic();
+		return result;
+	}
+
+	/**
+	 * @return boards won by the first hand, out of {@link #BOARDS}
+	 */
+	public int getWins(long hand1, long hand2) {
+		return (int) (matchup(hand1, hand2) >>> 32);
+	}
+
+	/**
+	 * @return split boards, out of {@link #BOARDS}
+	 */
+	public int getTies(long hand1, long hand2) {
+		return (int) matchup(hand1, hand2);
+	}
+
+	/**
+	 * @param class1 class of the first hand, see {@link #classIndex(int, int)}
+	 * @param class2 class of the second hand
+	 * @return boards won by the first class, split boards and all boards of the non-conflicting hands,
+	 * all 0 if a partial table does not have every hand matchup of the classes
+	 */
+	public int[] getClassMatchup(int class1, int class2) {
+		int i = (class1 * CLASSES + class2) * 3;
+		return new int[] {classes.get(i), classes.get(i + 1), classes.get(i + 2)};
+	}
+
+	private void addMatchup(ResultAccumulator accumulator, int hand1, int hand2) {
+		long mask1 = Range.comboMask(hand1);
+		long mask2 = Range.comboMask(hand2);
+		if ((mask1 & mask2) == 0) {
+			long matchup = matchup(mask1, mask2);
+			accumulator.addHeadsUp(BOARDS, matchup >>> 32, matchup & 0xFFFFFFFFL);
+		}
+	}
+
+	// classes of which the range holds every hand
+	private static boolean[] fullClasses(Range range) {
+		int[] count = new int[CLASSES];
+		for (int hand : range.combos()) {
+			count[HAND_CLASS[hand]]++;
+		}
+		boolean[] full = new boolean[CLASSES];
+		for (int i = 0;i<CLASSES;i++){
+			full[i] = count[i] == CLASS_SIZE[i];
+		}
+		return full;
+	}
+
+	/**
+	 * @return number of stored matchups
+	 */
+	public int size() {
+		return size;
+	}
+
+	// boards won by hand1 in the high 32 bits, split boards in the low 32 bits
+	private long matchup(long hand1, long hand2) {
+		int key = matchupKey(CardMask.first(hand1), CardMask.first(CardMask.removeFirst(hand1)),
+				CardMask.first(hand2), CardMask.first(CardMask.removeFirst(hand2)));
+		int id = binarySearch(key >>> 1);
+		if (id < 0) {
+			throw new RuntimeException("Matchup " + CardMask.toString(hand1) + " vs " + CardMask.toString(hand2) + " is not in the table");
+		}
+		long win = wins.get(id);
+		long tie = ties.get(id);
+		if ((key & 1) != 0) { // stored the other way round
+			win = BOARDS - win - tie;
+		}
+		return win << 32 | tie;
+	}
+
+	private int binarySearch(int key) {
+		int low = 0;
+		int high = size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int value = keys.get(middle);
+			if (value < key) {
+				low = middle + 1;
+			} else if (value > key) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return index 0..1325 of the hand, same as {@link Range#comboIndex(int, int)}
+	 */
+	public static int handIndex(int card1, int card2) {
+		return Range.comboIndex(card1, card2);
+	}
+
+	/**
+	 * @return index 0..168 of the hand class, rank1 * 13 + rank2 with the higher rank first for suited hands,
+	 * the lower rank first for offsuit hands
+	 */
+	public static int classIndex(int card1, int card2) {
+		int rank1 = card1 % 13;
+		int rank2 = card2 % 13;
+		int high = Math.max(rank1, rank2);
+		int low = Math.min(rank1, rank2);
+		if (card1 / 13 == card2 / 13) {
+			return high * 13 + low;
+		}
+		return low * 13 + high;
+	}
+
+	/**
+	 * Maps the matchup to the smallest key over all suit permutations and both hand orders.
+	 * @return key * 2, plus 1 if the smallest key has the hands swapped
+	 */
+	static int matchupKey(int a1, int a2, int b1, int b2) {
+		int best = Integer.MAX_VALUE;
+		int swapped = 0;
+		for (int p = 0;p<SuitIsomorphism.ALL.length;p++){
+			int hand1 = handIndex(SuitIsomorphism.permuteCard(a1, p), SuitIsomorphism.permuteCard(a2, p));
+			int hand2 = handIndex(SuitIsomorphism.permuteCard(b1, p), SuitIsomorphism.permuteCard(b2, p));
+			int key = hand1 * HANDS + hand2;
+			if (key < best) {
+				best = key;
+				swapped = 0;
+			}
+			key = hand2 * HANDS + hand1;
+			if (key < best) {
+				best = key;
+				swapped = 1;
+			}
+		}
+		return best << 1 | swapped;
+	}
+
+	static int firstCard(int hand) {
+		return FIRST_CARD[hand];
+	}
+
+	static int secondCard(int hand) {
+		return SECOND_CARD[hand];
+	}
+
+	private static IntBuffer slice(IntBuffer buffer, int from, int length) {
+		IntBuffer slice = buffer.duplicate();
+		slice.position(from);
+		slice.limit(from + length);
+		return slice.slice();
+	}
+}
@@ -0,0 +1,521 @@
+package mi.poker.calculation;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import mi.poker.common.utils.CardMask;
+import mi.poker.common.utils.SuitIsomorphism;
+
+/**
+ * @author m1
+ * Immutable set of two card hands (combos) of one player, with an optional weight per combo.
+ * <p>
+ * Every one of the 1326 combos has a fixed index, see {@link #comboIndex(int, int)}, and the range is a 1326 bit
+ * mask over these indexes, so union, intersection and dead card removal are a few word operations. Weights are
+ * relative frequencies, 1 by default; they are used by calculations that sample hands.
+ * <p>
+ * Ranges parsed by {@link #parse(String)} are cached, parsing the same description again is a map lookup.
+ */
+public final class Range implements Comparable<Range> {
+
+	/**
+	 * Number of two card hands
+	 */
+	public static final int COMBOS = 1326;
+
+	private static final int WORDS = (COMBOS + 63) / 64;
+	private static final int CACHE_SIZE = 10000;
+
+	// combo index -> card mask
+	private static final long[] COMBO_MASKS = new long[COMBOS];
+	// card index -> combos with this card
+	private static final long[][] CARD_COMBOS = new long[52][WORDS];
+	static {
+		for (int high = 1;high<52;high++){
+			for (int low = 0;low<high;low++){
+				int combo = comboIndex(low, high);
+				COMBO_MASKS[combo] = CardMask.bit(low) | CardMask.bit(high);
+				CARD_COMBOS[low][combo >>> 6] |= 1L << combo;
+				CARD_COMBOS[high][combo >>> 6] |= 1L << combo;
+			}
+		}
+	}
+
+	// ranking position -> combos of the hands up to it in BaseRangeStrategy.handRankingStr, ranges like "AQs+"
+	private static final long[][] RANKING_COMBOS = new long[BaseRangeStrategy.handRankingStr.length][];
+	static {
+		long[] bits = new long[WORDS];
+		for (int i = 0;i<RANKING_COMBOS.length;i++){
+			String hand = BaseRangeStrategy.handRankingStr[i];
+			addPattern(bits, hand.toCharArray(), new int[] {0, 1, 2}, hand.length(), hand);
+			RANKING_COMBOS[i] = bits.clone();
+		}
+	}
+
+	private static final ConcurrentMap<String, Range> CACHE = new ConcurrentHashMap<String, Range>();
+
+	public static final Range EMPTY = new Range(new long[WORDS], null, "");
+	public static final Range ALL;
+	static {
+		long[] bits = new long[WORDS];
+		for (int i = 0;i<COMBOS;i++){
+			bits[i >>> 6] |= 1L << i;
+		}
+		ALL = new Range(bits, null, "XxXx");
+	}
+
+	private final long[] bits;
+	private final float[] weights; // null if every weight is 1
+	private final int size;
+	private final String description;
+	// lazily built views, ranges are immutable so racing builders produce equal arrays
+	private volatile int[] combos;
+	private volatile long[] masks;
+
+	private Range(long[] bits, float[] weights, String description) {
+		this.bits = bits;
+		this.weights = weights;
+		this.description = description;
+		int count = 0;
+		for (long word : bits) {
+			count += Long.bitCount(word);
+		}
+		this.size = count;
+	}
+
+	/**
+	 * @param range description of one player's hands, same format as {@link HandParser#parsePossibleHands(String)}
+	 * @return the range, cached
+	 * @throws HandParseException at the first invalid hand
+	 */
+	public static Range parse(String range) {
+		Range result = CACHE.get(range);
+		if (result == null) {
+			result = parse(range, 0, range.length());
+			if (CACHE.size() >= CACHE_SIZE) {
+				CACHE.clear(); // unusual amount of different ranges, start again
+			}
+			CACHE.put(range, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Parses the range written in input at from..to-1 in a single pass over the characters, without the cache.
+	 * The trimmed text is kept as the description, it is the only copy made.
+	 * @throws HandParseException at the first invalid hand, the position is in input
+	 */
+	static Range parse(String input, int from, int to) {
+		long[] bits = new long[WORDS];
+		char[] hand = new char[5]; // current hand without spaces, "AQs+" is the longest
+		int[] positions = new int[hand.length];
+		int length = 0;
+		int first = to; // description bounds
+		int last = from;
+		for (int i = from;i<=to;i++){
+			char c = i < to ? input.charAt(i) : '|';
+			if (c == '|') {
+				if (length > 0) { // empty hands like in "AA||KK" are skipped
+					addHand(bits, hand, positions, length, input);
+				}
+				length = 0;
+			} else if (c != ' ') {
+				if (length == hand.length) {
+					throw new HandParseException("Invalid hand", input, positions[0]);
+				}
+				hand[length] = c;
+				positions[length++] = i;
+			}
+			if (i < to && c > ' ') {
+				first = Math.min(first, i);
+				last = i + 1;
+			}
+		}
+		return new Range(bits, null, first < last ? input.substring(first, last) : "");
+	}
+
+	private static void addHand(long[] bits, char[] hand, int[] positions, int length, String input) {
+		if (hand[length - 1] == '+') {
+			int ranking = rankingIndex(hand, length - 1);
+			if (ranking < 0) {
+				addPattern(new long[WORDS], hand, positions, length - 1, input); // only checks the syntax
+				// as in BaseRangeStrategy, a hand missing from the ranking like "AQo+" includes the whole ranking
+				ranking = RANKING_COMBOS.length - 1;
+			}
+			for (int i = 0;i<WORDS;i++){
+				bits[i] |= RANKING_COMBOS[ranking][i];
+			}
+		} else if (length == 4 && hand[0] == 'X' && hand[1] == 'x' && hand[2] == 'X' && hand[3] == 'x') {
+			for (int i = 0;i<WORDS;i++){
+				bits[i] |= ALL.bits[i];
+			}
+		} else if (length == 4 && HandParser.isSuit(hand[1]) && HandParser.isSuit(hand[3])) {
+			int card1 = HandParser.suit(hand[1]) * 13 + rank(hand, positions, 0, input);
+			int card2 = HandParser.suit(hand[3]) * 13 + rank(hand, positions, 2, input);
+			if (card1 == card2) {
+				throw new HandParseException("Repeated card", input, positions[2]);
+			}
+			add(bits, card1, card2);
+		} else if (length == 2 || length == 3) {
+			addPattern(bits, hand, positions, length, input);
+		} else {
+			throw new HandParseException("Invalid hand", input, positions[0]);
+		}
+	}
+
+	/**
+	 * Adds the combos of a pattern like "99", "AJ", "AJs" or "AJo"
+	 */
+	private static void addPattern(long[] bits, char[] hand, int[] positions, int length, String input) {
+		if (length != 2 && length != 3) {
+			throw new HandParseException("Invalid hand", input, positions[0]);
+		}
+		int rank1 = rank(hand, positions, 0, input);
+		int rank2 = rank(hand, positions, 1, input);
+		boolean suited = length == 2 || hand[2] == 's';
+		boolean offsuit = length == 2 || hand[2] == 'o';
+		if (!suited && !offsuit) {
+			throw new HandParseException("Expected 's' or 'o'", input, positions[2]);
+		}
+		if (rank1 == rank2 && length == 3 && suited) {
+			throw new HandParseException("Suited pair", input, positions[2]);
+		}
+		for (int suit1 = 0;suit1<4;suit1++){
+			for (int suit2 = rank1 == rank2 ? suit1 + 1 : 0;suit2<4;suit2++){
+				if (suit1 == suit2 ? suited : offsuit) {
+					add(bits, suit1 * 13 + rank1, suit2 * 13 + rank2);
+				}
+			}
+		}
+	}
+
+	private static int rank(char[] hand, int[] positions, int i, String input) {
+		int rank = HandParser.rank(hand[i]);
+		if (rank < 0) {
+			throw new HandParseException("Invalid rank '" + hand[i] + "'", input, positions[i]);
+		}
+		return rank;
+	}
+
+	private static void add(long[] bits, int card1, int card2) {
+		int combo = comboIndex(card1, card2);
+		bits[combo >>> 6] |= 1L << combo;
+	}
+
+	// position of the hand in BaseRangeStrategy.handRankingStr, compared character by character, -1 if missing
+	private static int rankingIndex(char[] hand, int length) {
+		for (int i = 0;i<RANKING_COMBOS.length;i++){
+			String ranked = BaseRangeStrategy.handRankingStr[i];
+			if (ranked.length() == length) {
+				int j = 0;
+				while (j < length && ranked.charAt(j) == hand[j]) {
+					j++;
+				}
+				if (j == length) {
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @param hands hands of all players separated by ',', see {@link HandParser#parsePlayersHands(String)}
+	 * @return range of every player
+	 */
+	public static Range[] parsePlayers(String hands) {
+		String[] handsArray = hands.trim().split(",");
+		Range[] result = new Range[handsArray.length];
+		for (int i = 0;i<handsArray.length;i++){
+			result[i] = parse(handsArray[i]);
+		}
+		return result;
+	}
+
+	/**
+	 * @param hands two card {@link CardMask}s
+	 */
+	public static Range of(long... hands) {
+		long[] bits = new long[WORDS];
+		for (long hand : hands) {
+			int combo = comboIndex(hand);
+			bits[combo >>> 6] |= 1L << combo;
+		}
+		return new Range(bits, null, null);
+	}
+
+	/**
+	 * @return index 0..1325 of the two card hand
+	 */
+	public static int comboIndex(int card1, int card2) {
+		int low = Math.min(card1, card2);
+		int high = Math.max(card1, card2);
+		return high * (high - 1) / 2 + low;
+	}
+
+	/**
+	 * @param hand two card {@link CardMask}
+	 * @return index 0..1325 of the two card hand
+	 */
+	public static int comboIndex(long hand) {
+		if (CardMask.size(hand) != 2) {
+			throw new RuntimeException("Not a two card hand " + CardMask.toString(hand));
+		}
+		return comboIndex(CardMask.first(hand), CardMask.first(CardMask.removeFirst(hand)));
+	}
+
+	/**
+	 * @return {@link CardMask} of the combo
+	 */
+	public static long comboMask(int combo) {
+		return COMBO_MASKS[combo];
+	}
+
+	public boolean contains(int combo) {
+		return (bits[combo >>> 6] & 1L << combo) != 0;
+	}
+
+	/**
+	 * @return number of combos
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return true if some combo has a weight other than 1
+	 */
+	public boolean isWeighted() {
+		return weights != null;
+	}
+
+	/**
+	 * @return weight of the combo, 0 if it is not in the range
+	 */
+	public float getWeight(int combo) {
+		if (!contains(combo)) {
+			return 0;
+		}
+		return weights == null ? 1 : weights[combo];
+	}
+
+	/**
+	 * @param weight relative frequency of the combo, 0 removes it from the range
+	 * @return copy of this range with the combo added or reweighted
+	 */
+	public Range withWeight(int combo, float weight) {
+		if (weight < 0 || Float.isNaN(weight)) {
+			throw new IllegalArgumentException("Invalid weight " + weight);
+		}
+		long[] resultBits = bits.clone();
+		float[] resultWeights = weights();
+		if (weight == 0) {
+			resultBits[combo >>> 6] &= ~(1L << combo);
+		} else {
+			resultBits[combo >>> 6] |= 1L << combo;
+		}
+		resultWeights[combo] = weight;
+		return new Range(resultBits, normalize(resultBits, resultWeights), null);
+	}
+
+	/**
+	 * @return combos in either range, a combo in both gets the bigger weight
+	 */
+	public Range union(Range other) {
+		long[] resultBits = new long[WORDS];
+		for (int i = 0;i<WORDS;i++){
+			resultBits[i] = bits[i] | other.bits[i];
+		}
+		if (weights == null && other.weights == null) {
+			return new Range(resultBits, null, null);
+		}
+		float[] resultWeights = new float[COMBOS];
+		for (int combo = 0;combo<COMBOS;combo++){
+			resultWeights[combo] = Math.max(getWeight(combo), other.getWeight(combo));
+		}
+		return new Range(resultBits, normalize(resultBits, resultWeights), null);
+	}
+
+	/**
+	 * @return combos in both ranges, with the smaller weight
+	 */
+	public Range intersect(Range other) {
+		long[] resultBits = new long[WORDS];
+		for (int i = 0;i<WORDS;i++){
+			resultBits[i] = bits[i] & other.bits[i];
+		}
+		if (weights == null && other.weights == null) {
+			return new Range(resultBits, null, null);
+		}
+		float[] resultWeights = new float[COMBOS];
+		for (int combo = 0;combo<COMBOS;combo++){
+			resultWeights[combo] = Math.min(getWeight(combo), other.getWeight(combo));
+		}
+		return new Range(resultBits, normalize(resultBits, resultWeights), null);
+	}
+
+	/**
+	 * @param dead {@link CardMask} of cards that can not be in a hand, e.g. board and dead cards
+	 * @return combos without the dead cards, this range if none is blocked. The description is kept.
+	 */
+	public Range removeDead(long dead) {
+		long[] resultBits = null;
+		for (long m = dead; m != 0; m = CardMask.removeFirst(m)) {
+			long[] blocked = CARD_COMBOS[CardMask.first(m)];
+			for (int i = 0;i<WORDS;i++){
+				if ((bits[i] & blocked[i]) != 0) {
+					if (resultBits == null) {
+						resultBits = bits.clone();
+					}
+					resultBits[i] &= ~blocked[i];
+				}
+			}
+		}
+		if (resultBits == null) {
+			return this;
+		}
+		return new Range(resultBits, weights, description);
+	}
+
+	/**
+	 * @param permutation {@link SuitIsomorphism} permutation number 0..23
+	 * @return the range with suits permuted, weights move with their combos. The description is not kept.
+	 */
+	public Range permuteSuits(int permutation) {
+		if (permutation == 0) {
+			return this;
+		}
+		long[] resultBits = new long[WORDS];
+		float[] resultWeights = weights == null ? null : new float[COMBOS];
+		for (int combo : combos()) {
+			int permuted = comboIndex(SuitIsomorphism.permute(COMBO_MASKS[combo], permutation));
+			resultBits[permuted >>> 6] |= 1L << permuted;
+			if (resultWeights != null) {
+				resultWeights[permuted] = weights[combo];
+			}
+		}
+		return new Range(resultBits, resultWeights, null);
+	}
+
+	/**
+	 * @return combo indexes, ascending
+	 */
+	public int[] combos() {
+		int[] result = combos;
+		if (result == null) {
+			result = new int[size];
+			int n = 0;
+			for (int i = 0;i<WORDS;i++){
+				for (long word = bits[i]; word != 0; word &= word - 1) {
+					result[n++] = (i << 6) + Long.numberOfTrailingZeros(word);
+				}
+			}
+			combos = result;
+		}
+		return result;
+	}
+
+	/**
+	 * @return {@link CardMask} of every combo, in {@link #combos()} order. Do not modify, the array is shared.
+	 */
+	public long[] masks() {
+		long[] result = masks;
+		if (result == null) {
+			int[] indexes = combos();
+			result = new long[indexes.length];
+			for (int i = 0;i<indexes.length;i++){
+				result[i] = COMBO_MASKS[indexes[i]];
+			}
+			masks = result;
+		}
+		return result;
+	}
+
+	// copy of the weights with 1 for every combo in the range
+	private float[] weights() {
+		if (weights != null) {
+			return weights.clone();
+		}
+		float[] result = new float[COMBOS];
+		for (int combo : combos()) {
+			result[combo] = 1;
+		}
+		return result;
+	}
+
+	// null if every weight in the range is 1
+	private static float[] normalize(long[] bits, float[] weights) {
+		for (int combo = 0;combo<COMBOS;combo++){
+			if ((bits[combo >>> 6] & 1L << combo) != 0 && weights[combo] != 1) {
+				return weights;
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof Range)) {
+			return false;
+		}
+		Range other = (Range) obj;
+		if (!Arrays.equals(bits, other.bits)) {
+			return false;
+		}
+		for (int combo : combos()) {
+			if (getWeight(combo) != other.getWeight(combo)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Total order consistent with {@link #equals(Object)}: by combos, then by weights
+	 */
+	public int compareTo(Range other) {
+		for (int i = 0;i<WORDS;i++){
+			if (bits[i] != other.bits[i]) {
+				return Long.compareUnsigned(bits[i], other.bits[i]);
+			}
+		}
+		for (int combo : combos()) {
+			int c = Float.compare(getWeight(combo), other.getWeight(combo));
+			if (c != 0) {
+				return c;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(bits);
+	}
+
+	/**
+	 * @return the parsed description, or all combos if the range was built otherwise
+	 */
+	@Override
+	public String toString() {
+		if (description != null) {
+			return description;
+		}
+		StringBuilder builder = new StringBuilder();
+		for (int combo : combos()) {
+			if (builder.length() > 0) {
+				builder.append('|');
+			}
+			builder.append(CardMask.toString(COMBO_MASKS[combo]));
+		}
+		return builder.toString();
+	}
+}
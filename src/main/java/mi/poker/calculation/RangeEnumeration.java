@@ -0,0 +1,340 @@
+package mi.poker.calculation;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.common.evaluator.HandEvaluator;
+import mi.poker.common.utils.CardMask;
+import mi.poker.common.utils.SuitIsomorphism;
+
+/**
+ * @author m1
+ * Exact heads-up range against range equity, same result as {@link ExhaustiveEnumeration}.
+ * <p>
+ * Instead of playing every pair of hands on every board, each live hand of both ranges is evaluated once per board.
+ * The ranks are sorted and a single sweep over both lists counts, for every hand of the first range, the opponent
+ * hands it beats or ties. Opponent hands sharing a card with it are removed from the counts with per card counters.
+ * A board costs O(n log n) for n hands instead of O(n&sup2;).
+ * <p>
+ * Boards that are suit permutations of each other are counted once, see {@link SuitIsomorphism}. With a
+ * {@link ForkJoinPool} boards are split between tasks by their first dealt card.
+ */
+public class RangeEnumeration implements CancellableCalculation {
+
+	// boards enumerated by a single task
+	private static final long SPLIT_THRESHOLD = 2000;
+
+	private final EvaluatorType evaluatorType;
+	private final ForkJoinPool pool;
+	private boolean suitIsomorphism = true;
+	private CancellationToken token;
+
+	/**
+	 * Enumeration with the HandEval evaluator
+	 */
+	public RangeEnumeration() {
+		this(EvaluatorType.HAND_EVAL);
+	}
+
+	/**
+	 * Single threaded enumeration, runs in the calling thread
+	 */
+	public RangeEnumeration(EvaluatorType evaluatorType) {
+		this(evaluatorType, null);
+	}
+
+	/**
+	 * @param pool runs the boards, null to run everything in the calling thread
+	 */
+	public RangeEnumeration(EvaluatorType evaluatorType, ForkJoinPool pool) {
+		this.evaluatorType = evaluatorType;
+		this.pool = pool;
+	}
+
+	public Result calculate(String playerHands, String boardCards,
+			String deadCards) {
+		return calculate(Range.parsePlayers(playerHands), HandParser.parseCardMask(boardCards), HandParser.parseCardMask(deadCards));
+	}
+
+	/**
+	 * Range weights are not used, every combo is enumerated once
+	 * @param ranges exactly two ranges
+	 */
+	public Result calculate(Range[] ranges, long boardCards, long deadCards) {
+		if (ranges.length != 2) {
+			throw new IllegalArgumentException("Range enumeration needs two players, got " + ranges.length);
+		}
+		Result result = new Result(ranges);
+		long[] first = ranges[0].removeDead(boardCards | deadCards).masks();
+		long[] second = ranges[1].removeDead(boardCards | deadCards).masks();
+		long deck = CardMask.FULL_DECK & ~boardCards & ~deadCards;
+		int[] group = SuitIsomorphism.IDENTITY;
+		if (suitIsomorphism) {
+			group = SuitIsomorphism.stabilizer(SuitIsomorphism.ALL, boardCards);
+			group = SuitIsomorphism.stabilizer(group, deadCards);
+			group = SuitIsomorphism.stabilizer(group, first);
+			group = SuitIsomorphism.stabilizer(group, second);
+		}
+		int to = CardMask.size(boardCards) == 5 ? 1 : CardMask.size(deck); // a full board is a single showdown
+
+		ResultAccumulator accumulator;
+		if (pool == null) {
+			BoardEnumerator enumerator = new BoardEnumerator(evaluatorType.create(), first, second, boardCards, group, token);
+			enumerator.dealBoards(deck, 0, to);
+			accumulator = enumerator.accumulator;
+		} else {
+			ThreadLocal<HandEvaluator> evaluators = new ThreadLocal<HandEvaluator>() {
+				@Override
+				protected HandEvaluator initialValue() {
+					return evaluatorType.create();
+				}
+			};
+			accumulator = pool.invoke(new BoardTask(evaluators, first, second, boardCards, group, token, deck, 0, to));
+		}
+		accumulator.applyTo(result);
+		result.calculateStatistic();
+		return result;
+	}
+
+	/**
+	 * Serial enumeration of the boards
+	 */
+	private static final class BoardEnumerator {
+
+		private final HandEvaluator evaluator;
+		private final ResultAccumulator accumulator = new ResultAccumulator(2);
+		private final long board;
+		private final int[] group;
+		private final CancellationToken token;
+
+		// hands of both ranges: card mask, card indexes and combo index
+		private final long[] first;
+		private final int[] firstLow;
+		private final int[] firstHigh;
+		private final int[] firstCombo;
+		private final long[] second;
+		private final int[] secondLow;
+		private final int[] secondHigh;
+		private final boolean[] inSecond = new boolean[Range.COMBOS];
+
+		// rank << 32 | hand index, sorted per board
+		private final long[] firstRanks;
+		private final long[] secondRanks;
+		// second range hands holding the card: live, ranked lower, ranked lower or equal
+		private final int[] liveCards = new int[52];
+		private final int[] lowerCards = new int[52];
+		private final int[] notHigherCards = new int[52];
+
+		// enumeration state, card indexes
+		private final int[] boardCards = new int[5];
+		private final int[] deckCards = new int[52];
+
+		BoardEnumerator(HandEvaluator evaluator, long[] first, long[] second, long board, int[] group, CancellationToken token) {
+			this.evaluator = evaluator;
+			this.board = board;
+			this.group = group;
+			this.token = token;
+			this.first = first;
+			this.second = second;
+			firstLow = new int[first.length];
+			firstHigh = new int[first.length];
+			firstCombo = new int[first.length];
+			for (int i = 0;i<first.length;i++){
+				firstLow[i] = CardMask.first(first[i]);
+				firstHigh[i] = CardMask.first(CardMask.removeFirst(first[i]));
+				firstCombo[i] = Range.comboIndex(firstLow[i], firstHigh[i]);
+			}
+			secondLow = new int[second.length];
+			secondHigh = new int[second.length];
+			for (int i = 0;i<second.length;i++){
+				secondLow[i] = CardMask.first(second[i]);
+				secondHigh[i] = CardMask.first(CardMask.removeFirst(second[i]));
+				inSecond[Range.comboIndex(secondLow[i], secondHigh[i])] = true;
+			}
+			firstRanks = new long[first.length];
+			secondRanks = new long[second.length];
+		}
+
+		/**
+		 * Deals all boards whose first dealt card is one of deck cards from..to-1
+		 * @param deck - cards not dealt yet
+		 */
+		void dealBoards(long deck, int from, int to) {
+			int boardSize = CardMask.toIndexes(board, boardCards);
+			int deckSize = CardMask.toIndexes(deck, deckCards);
+			if (boardSize == 5) {
+				showdown();
+				return;
+			}
+			for (int i = from;i<Math.min(to, deckSize);i++){
+				boardCards[boardSize] = deckCards[i];
+				dealBoard(boardSize + 1, i + 1, deckSize);
+			}
+		}
+
+		private void dealBoard(int boardSize, int cardIndex, int deckSize) {
+			if (boardSize == 5) {
+				showdown();
+				return;
+			}
+			for (int i = cardIndex;i<deckSize;i++){
+				boardCards[boardSize] = deckCards[i];
+				dealBoard(boardSize + 1, i + 1, deckSize);
+			}
+		}
+
+		private void showdown() {
+			if (token != null) { // a board evaluates every hand of both ranges, checking the clock is cheap
+				token.check();
+			}
+			long boardMask = 0;
+			for (int card : boardCards) {
+				boardMask |= CardMask.bit(card);
+			}
+			long weight = 1;
+			if (group.length > 1) {
+				weight = SuitIsomorphism.orbitSize(group, boardMask);
+				if (weight == 0) { // suit permutation of another board
+					return;
+				}
+			}
+			long boardState = evaluator.boardState(boardCards[0], boardCards[1], boardCards[2], boardCards[3], boardCards[4]);
+			int firstSize = rank(first, firstLow, firstHigh, boardMask, boardState, firstRanks);
+			int secondSize = rank(second, secondLow, secondHigh, boardMask, boardState, secondRanks);
+			Arrays.sort(firstRanks, 0, firstSize);
+			Arrays.sort(secondRanks, 0, secondSize);
+
+			Arrays.fill(liveCards, 0);
+			Arrays.fill(lowerCards, 0);
+			Arrays.fill(notHigherCards, 0);
+			for (int j = 0;j<secondSize;j++){
+				int hand = (int) secondRanks[j];
+				liveCards[secondLow[hand]]++;
+				liveCards[secondHigh[hand]]++;
+			}
+
+			long games = 0;
+			long wins = 0;
+			long ties = 0;
+			int lower = 0; // second range hands ranked lower than the current one
+			int notHigher = 0;
+			for (int i = 0;i<firstSize;i++){ // first range hands from the weakest
+				int rank = (int) (firstRanks[i] >>> 32);
+				int hand = (int) firstRanks[i];
+				for (;lower<secondSize && (int) (secondRanks[lower] >>> 32) < rank;lower++){
+					int other = (int) secondRanks[lower];
+					lowerCards[secondLow[other]]++;
+					lowerCards[secondHigh[other]]++;
+				}
+				for (;notHigher<secondSize && (int) (secondRanks[notHigher] >>> 32) <= rank;notHigher++){
+					int other = (int) secondRanks[notHigher];
+					notHigherCards[secondLow[other]]++;
+					notHigherCards[secondHigh[other]]++;
+				}
+				int low = firstLow[hand];
+				int high = firstHigh[hand];
+				// the same hand in the second range holds both cards and was subtracted twice, it is never ranked lower
+				int same = inSecond[firstCombo[hand]] ? 1 : 0;
+				int won = lower - lowerCards[low] - lowerCards[high];
+				games += secondSize - liveCards[low] - liveCards[high] + same;
+				wins += won;
+				ties += notHigher - notHigherCards[low] - notHigherCards[high] + same - won;
+			}
+			accumulator.addHeadsUp(games * weight, wins * weight, ties * weight);
+		}
+
+		/**
+		 * Evaluates the hands not blocked by the board
+		 * @return number of ranked hands
+		 */
+		private int rank(long[] hands, int[] low, int[] high, long boardMask, long boardState, long[] ranks) {
+			int n = 0;
+			for (int i = 0;i<hands.length;i++){
+				if ((hands[i] & boardMask) == 0) {
+					ranks[n++] = (long) evaluator.evaluate(boardState, low[i], high[i]) << 32 | i;
+				}
+			}
+			return n;
+		}
+	}
+
+	/**
+	 * Boards whose first dealt card is at deck positions from..to-1
+	 */
+	private static final class BoardTask extends RecursiveTask<ResultAccumulator> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ThreadLocal<HandEvaluator> evaluators;
+		private final long[] first;
+		private final long[] second;
+		private final long board;
+		private final int[] group;
+		private final CancellationToken token;
+		private final long deck;
+		private final int from;
+		private final int to;
+
+		BoardTask(ThreadLocal<HandEvaluator> evaluators, long[] first, long[] second, long board, int[] group,
+				CancellationToken token, long deck, int from, int to) {
+			this.evaluators = evaluators;
+			this.first = first;
+			this.second = second;
+			this.board = board;
+			this.group = group;
+			this.token = token;
+			this.deck = deck;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected ResultAccumulator compute() {
+			if (to - from > 1 && estimateBoards() >= SPLIT_THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				BoardTask left = new BoardTask(evaluators, first, second, board, group, token, deck, from, middle);
+				left.fork();
+				ResultAccumulator accumulator = new BoardTask(evaluators, first, second, board, group, token, deck, middle, to).compute();
+				accumulator.merge(left.join());
+				return accumulator;
+			}
+			BoardEnumerator enumerator = new BoardEnumerator(evaluators.get(), first, second, board, group, token);
+			enumerator.dealBoards(deck, from, to);
+			return enumerator.accumulator;
+		}
+
+		/**
+		 * @return upper bound of boards in this task
+		 */
+		private long estimateBoards() {
+			int missing = 5 - CardMask.size(board) - 1; // the first card is from..to
+			long boards = to - from;
+			int cards = CardMask.size(deck) - 1;
+			for (int i = 0;i<missing;i++){
+				boards = boards * (cards - i) / (i + 1);
+			}
+			return boards;
+		}
+	}
+
+	public CancellationToken getCancellationToken() {
+		return token;
+	}
+
+	public void setCancellationToken(CancellationToken token) {
+		this.token = token;
+	}
+
+	public boolean isSuitIsomorphism() {
+		return suitIsomorphism;
+	}
+
+	/**
+	 * @param suitIsomorphism false to evaluate every board, useful only to check the symmetry reduction
+	 */
+	public void setSuitIsomorphism(boolean suitIsomorphism) {
+		this.suitIsomorphism = suitIsomorphism;
+	}
+}
@@ -0,0 +1,173 @@
+package mi.poker.calculation;
+
+import java.util.Random;
+
+import mi.poker.common.utils.CardMask;
+
+/**
+ * @author m1
+ * Draws random hands of a range, every hand with probability proportional to its weight.
+ * <p>
+ * Built once per calculation: the weights are turned into a Walker alias table, so a draw is one random
+ * index and one random number, whatever the range size or weights. Hands that conflict with cards
+ * already dealt are rejected and drawn again, which keeps the draw proportional to the weights of the
+ * hands still possible. Only when most hands are blocked the sampler falls back to a scan of the range.
+ * Immutable, one sampler can be shared by threads using their own {@link Random}.
+ */
+public final class RangeSampler {
+
+	private static final int REJECTION_TRIES = 32;
+
+	private final long[] hands;
+	private final double[] weights; // null if uniform
+	private final double[] probability; // alias table, null if uniform
+	private final int[] alias;
+	private final boolean anyTwoCards;
+
+	/**
+	 * @param range hands and weights, dead cards should already be removed
+	 */
+	public RangeSampler(Range range) {
+		this(range.masks(), weights(range), range.size() == Range.COMBOS && !range.isWeighted());
+	}
+
+	/**
+	 * Uniform sampler
+	 * @param hands hands as {@link CardMask}s
+	 */
+	public RangeSampler(long[] hands) {
+		this(hands, null, hands.length == Range.COMBOS);
+	}
+
+	private RangeSampler(long[] hands, double[] weights, boolean anyTwoCards) {
+		if (hands.length == 0) {
+			throw new RuntimeException("Can not sample an empty range");
+		}
+		this.hands = hands;
+		this.weights = weights;
+		this.anyTwoCards = anyTwoCards;
+		if (weights == null) {
+			probability = null;
+			alias = null;
+		} else {
+			probability = new double[hands.length];
+			alias = new int[hands.length];
+			buildAliasTable(weights, probability, alias);
+		}
+	}
+
+	/**
+	 * @param deck cards not dealt yet
+	 * @return random hand of the range with both cards in the deck, the caller removes it from the deck
+	 */
+	public long sample(long deck, Random random) {
+		if (anyTwoCards) { // every hand is possible, deal two cards
+			long card1 = CardMask.bit(CardMask.get(deck, random.nextInt(CardMask.size(deck))));
+			deck &= ~card1;
+			long card2 = CardMask.bit(CardMask.get(deck, random.nextInt(CardMask.size(deck))));
+			return card1 | card2;
+		}
+		for (int i = 0;i<REJECTION_TRIES;i++){
+			long hand = hands[draw(random)];
+			if ((hand & deck) == hand) {
+				return hand;
+			}
+		}
+		return scan(deck, random);
+	}
+
+	/**
+	 * @return number of hands in the range
+	 */
+	public int size() {
+		return hands.length;
+	}
+
+	private int draw(Random random) {
+		int i = random.nextInt(hands.length);
+		if (probability == null || random.nextDouble() < probability[i]) {
+			return i;
+		}
+		return alias[i];
+	}
+
+	// most hands are blocked, pick among the available ones
+	private long scan(long deck, Random random) {
+		double total = 0;
+		for (int i = 0;i<hands.length;i++){
+			if ((hands[i] & deck) == hands[i]) {
+				total += weights == null ? 1 : weights[i];
+			}
+		}
+		if (total == 0) {
+			throw new RuntimeException("This is sad. No possible hand left, dealt cards "+CardMask.toString(~deck & CardMask.FULL_DECK));
+		}
+		double n = random.nextDouble() * total;
+		long last = 0;
+		for (int i = 0;i<hands.length;i++){
+			if ((hands[i] & deck) == hands[i]) {
+				last = hands[i];
+				n -= weights == null ? 1 : weights[i];
+				if (n < 0) {
+					return last;
+				}
+			}
+		}
+		return last; // rounding
+	}
+
+	/**
+	 * Vose's construction: every column i keeps its own hand with probability[i] and gives the rest to alias[i]
+	 */
+	private static void buildAliasTable(double[] weights, double[] probability, int[] alias) {
+		int n = weights.length;
+		double total = 0;
+		for (double weight : weights) {
+			total += weight;
+		}
+		double[] scaled = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int smallSize = 0;
+		int largeSize = 0;
+		for (int i = 0;i<n;i++){
+			scaled[i] = weights[i] * n / total;
+			if (scaled[i] < 1) {
+				small[smallSize++] = i;
+			} else {
+				large[largeSize++] = i;
+			}
+		}
+		while (smallSize > 0 && largeSize > 0) {
+			int less = small[--smallSize];
+			int more = large[--largeSize];
+			probability[less] = scaled[less];
+			alias[less] = more;
+			scaled[more] = scaled[more] + scaled[less] - 1;
+			if (scaled[more] < 1) {
+				small[smallSize++] = more;
+			} else {
+				large[largeSize++] = more;
+			}
+		}
+		while (largeSize > 0) {
+			probability[large[--largeSize]] = 1;
+		}
+		while (smallSize > 0) { // only left by rounding
+			probability[small[--smallSize]] = 1;
+		}
+	}
+
+	// weights in masks() order, null if the range is not weighted
+	private static double[] weights(Range range) {
+		if (!range.isWeighted()) {
+			return null;
+		}
+		int[] combos = range.combos();
+		double[] result = new double[combos.length];
+		for (int i = 0;i<combos.length;i++){
+			result[i] = range.getWeight(combos[i]);
+		}
+		return result;
+	}
+}
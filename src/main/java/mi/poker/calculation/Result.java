@@ -3,105 +3,163 @@
  */
 package mi.poker.calculation;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
-import java.util.Map.Entry;
 
+/**
+ * Hand statistics of every player, filled at the end of a calculation from the primitive counters of
+ * {@link ResultAccumulator}; calculations do not update it game by game.
+ */
 public class Result {
 
-	private List<Integer> topScorePlayerIdList = new LinkedList<Integer>();
-	private long topScore = 0;
-	private Map<Integer, HandInfo> map = new HashMap<Integer, HandInfo>();
+	private HandInfo[] handInfos;
+	private String plan;
+	private Long seed;
 
 	public Result(String playerHands) {
 		playerHands = playerHands.trim();
 		String[] handsArray = playerHands.split(",");
-		int i = 0;
-		for (String hand : handsArray) {
-			map.put(i++, new HandInfo(hand));
+		handInfos = new HandInfo[handsArray.length];
+		for (int i = 0;i<handsArray.length;i++){
+			handInfos[i] = new HandInfo(handsArray[i]);
 		}
 	}
 
+	private Result(HandInfo[] handInfos) {
+		this.handInfos = handInfos;
+	}
+
+	/**
+	 * @param ranges players' ranges, hand infos are named by the ranges
+	 */
+	public Result(Range[] ranges) {
+		handInfos = new HandInfo[ranges.length];
+		for (int i = 0;i<ranges.length;i++){
+			handInfos[i] = new HandInfo(ranges[i].toString());
+		}
+	}
+
+	/**
+	 * @return result of the same players, plan and seed, without any games
+	 */
+	Result emptyCopy() {
+		HandInfo[] infos = new HandInfo[handInfos.length];
+		for (int i = 0;i<infos.length;i++){
+			infos[i] = new HandInfo(handInfos[i].getHand());
+		}
+		Result copy = new Result(infos);
+		copy.setPlan(plan);
+		copy.setSeed(seed);
+		return copy;
+	}
+
 	public HandInfo getHandInfo(int playerNr) {
-		return map.get(playerNr);
+		return playerNr >= 0 && playerNr < handInfos.length ? handInfos[playerNr] : null;
+	}
+
+	void setHandInfo(int playerNr, HandInfo handInfo) {
+		handInfos[playerNr] = handInfo;
 	}
 
+	/**
+	 * @return why {@link EquityCalculation} chose the calculation of this result, null if it was not chosen
+	 * @see CalculationPlanner
+	 */
+	public String getPlan() {
+		return plan;
+	}
+
+	public void setPlan(String plan) {
+		this.plan = plan;
+	}
+
+	/**
+	 * @return seed of the random generator of a simulation, null if the result is exact.
+	 * A simulation with the same seed and number of trials gives the same result again.
+	 * @see MonteCarloSimulation#setSeed(Long)
+	 */
+	public Long getSeed() {
+		return seed;
+	}
+
+	public void setSeed(Long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * @return number of players
+	 */
+	public int size() {
+		return handInfos.length;
+	}
+
+	/**
+	 * @return hand infos by player number, read-only: put and remove throw UnsupportedOperationException,
+	 * use {@link #setMap(Map)} to replace the hand infos
+	 */
 	public Map<Integer, HandInfo> getMap() {
-		return map;
+		Map<Integer, HandInfo> map = new LinkedHashMap<Integer, HandInfo>();
+		for (int i = 0;i<handInfos.length;i++){
+			map.put(i, handInfos[i]);
+		}
+		return Collections.unmodifiableMap(map);
 	}
 
+	/**
+	 * @param map hand infos by player number 0..size-1
+	 */
 	public void setMap(Map<Integer, HandInfo> map) {
-		this.map = map;
+		HandInfo[] infos = new HandInfo[map.size()];
+		for (Map.Entry<Integer, HandInfo> entry : map.entrySet()) {
+			infos[entry.getKey()] = entry.getValue();
+		}
+		this.handInfos = infos;
 	}
 
 	/**
-	 * detects winner, and updates stats
+	 * detects winner from the current game scores, and updates stats.
+	 * Calculations count games with {@link ResultAccumulator} instead, this is for results built by hand.
 	 */
 	public void applyGameResult() {
-		topScore = 0;
-		topScorePlayerIdList.clear();
-		Set<Entry<Integer, HandInfo>> entries = map.entrySet();
-		for (Entry<Integer, HandInfo> entry : entries) {
-			if (entry.getValue().getCurrentGameScore() > topScore) { // if we
-																		// have
-																		// score
-																		// better
-																		// then
-																		// previous
-																		// best
-																		// score
-				topScore = entry.getValue().getCurrentGameScore(); // then it's
-																	// a our new
-																	// top score
-				topScorePlayerIdList.clear(); // we do not care about losers
-												// anymore
-				topScorePlayerIdList.add(entry.getKey()); // we have our own
-															// current leader
-			} else {
-				if (entry.getValue().getCurrentGameScore() == topScore) { // if
-																			// we
-																			// have
-																			// the
-																			// same
-																			// score
-					topScorePlayerIdList.add(entry.getKey());// it's a draw then
-				}
+		long topScore = 0;
+		int winners = 0;
+		for (HandInfo handInfo : handInfos) {
+			if (handInfo.getCurrentGameScore() > topScore) { // new leader, we do not care about losers anymore
+				topScore = handInfo.getCurrentGameScore();
+				winners = 1;
+			} else if (handInfo.getCurrentGameScore() == topScore) { // it's a draw then
+				winners++;
 			}
-
-			entry.getValue().increaseTotalGame(); // everyone played a game
-			entry.getValue().setCurrentGameScore(0); // do not care about
-														// playerScore anymore
 		}
-
-		if (topScorePlayerIdList.size() == 1) { // we got a winner :)
-			HandInfo winnerHand = map.get(topScorePlayerIdList.get(0));
-			winnerHand.increasePotsWon();
-		} else { // draw
-			for (int i : topScorePlayerIdList) {
-				HandInfo tightHand = map.get(i);
-				tightHand.increasePotsTied();
-				tightHand.addToPotsWonTied((double) 1
-						/ (double) topScorePlayerIdList.size());
+		for (HandInfo handInfo : handInfos) {
+			boolean top = handInfo.getCurrentGameScore() == topScore;
+			handInfo.increaseTotalGame(); // everyone played a game
+			handInfo.setCurrentGameScore(0); // do not care about playerScore anymore
+			if (!top) {
+				continue;
+			}
+			if (winners == 1) { // we got a winner :)
+				handInfo.increasePotsWon();
+			} else { // draw
+				handInfo.increasePotsTied();
+				handInfo.addSplitPots(winners, 1);
+				handInfo.addToPotsWonTied((double) 1 / (double) winners);
 			}
 		}
 	}
 
 	public void calculateStatistic() {
-		Set<Entry<Integer, HandInfo>> entries = map.entrySet();
-		for (Entry<Integer, HandInfo> entry : entries) {
-			entry.getValue().calculateStatistic();
+		for (HandInfo handInfo : handInfos) {
+			handInfo.calculateStatistic();
 		}
 	}
 
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
-		Set<Entry<Integer, HandInfo>> entries = map.entrySet();
-		for (Entry<Integer, HandInfo> entry : entries) {
-			builder.append(entry.getValue().toString()).append("\n");
+		for (HandInfo handInfo : handInfos) {
+			builder.append(handInfo.toString()).append("\n");
 		}
 		return builder.toString();
 	}
@@ -0,0 +1,171 @@
+package mi.poker.calculation;
+
+/**
+ * @author m1
+ * Primitive game counters of one calculation thread.
+ * <p>
+ * Split pots are counted per number of winners instead of summing fractions, so the pot shares
+ * are exact rationals until {@link #applyTo(Result)}. Accumulators can be merged in any order
+ * and always give the same {@link Result}, bit for bit.
+ */
+final class ResultAccumulator {
+
+	private final int players;
+	private long games;
+	private final long[] potsWon;
+	private final long[] potsTied;
+	// splitPots[player * (players + 1) + winners] - pots the player split between 'winners' players
+	private final long[] splitPots;
+	// least common multiple of 1..players, every pot share is a whole number of 1/shareDenominator parts
+	private final long shareDenominator;
+
+	ResultAccumulator(int players) {
+		this.players = players;
+		long lcm = 1;
+		for (int winners = 2;winners<=players;winners++){
+			lcm = lcm / gcd(lcm, winners) * winners;
+		}
+		this.shareDenominator = lcm;
+		this.potsWon = new long[players];
+		this.potsTied = new long[players];
+		this.splitPots = new long[players * (players + 1)];
+	}
+
+	/**
+	 * Counts one game, the best rank wins.
+	 * @param ranks rank of every player, higher is better
+	 */
+	void addGame(int[] ranks) {
+		addGame(ranks, 1);
+	}
+
+	/**
+	 * Counts the same game several times
+	 * @param weight number of games with this outcome
+	 */
+	void addGame(int[] ranks, long weight) {
+		int topScore = 0;
+		int winners = 0;
+		for (int i = 0;i<players;i++){
+			if (ranks[i] > topScore) {
+				topScore = ranks[i];
+				winners = 1;
+			} else if (ranks[i] == topScore) {
+				winners++;
+			}
+		}
+		games += weight;
+		for (int i = 0;i<players;i++){
+			if (ranks[i] != topScore) {
+				continue;
+			}
+			if (winners == 1) {
+				potsWon[i] += weight;
+			} else {
+				potsTied[i] += weight;
+				splitPots[i * (players + 1) + winners] += weight;
+			}
+		}
+	}
+
+	/**
+	 * Counts heads-up games known only by their totals
+	 * @param games number of games
+	 * @param firstWins games won by the first player
+	 * @param ties split games
+	 */
+	void addHeadsUp(long games, long firstWins, long ties) {
+		this.games += games;
+		potsWon[0] += firstWins;
+		potsWon[1] += games - firstWins - ties;
+		potsTied[0] += ties;
+		potsTied[1] += ties;
+		splitPots[2] += ties; // player 0, 2 winners
+		splitPots[(players + 1) + 2] += ties;
+	}
+
+	void merge(ResultAccumulator other) {
+		games += other.games;
+		for (int i = 0;i<players;i++){
+			potsWon[i] += other.potsWon[i];
+			potsTied[i] += other.potsTied[i];
+		}
+		for (int i = 0;i<splitPots.length;i++){
+			splitPots[i] += other.splitPots[i];
+		}
+	}
+
+	int getPlayers() {
+		return players;
+	}
+
+	long getGames() {
+		return games;
+	}
+
+	/**
+	 * @return pots won plus the shares of split pots, rounded once from the exact rational
+	 */
+	double getPotsWonTied(int player) {
+		try {
+			long share = Math.multiplyExact(potsWon[player], shareDenominator);
+			for (int winners = 2;winners<=players;winners++){
+				share = Math.addExact(share, Math.multiplyExact(splitPots[player * (players + 1) + winners], shareDenominator / winners));
+			}
+			return (double) share / shareDenominator;
+		} catch (ArithmeticException e) { // too many players and games for a long numerator
+			double share = potsWon[player];
+			for (int winners = 2;winners<=players;winners++){
+				share += (double) splitPots[player * (players + 1) + winners] / winners;
+			}
+			return share;
+		}
+	}
+
+	/**
+	 * @return pots the player split between 'winners' players
+	 */
+	long getSplitPots(int player, int winners) {
+		return splitPots[player * (players + 1) + winners];
+	}
+
+	/**
+	 * @return sum of squared pot shares, for the variance of the equity
+	 */
+	double getPotsWonTiedSquares(int player) {
+		double squares = potsWon[player];
+		for (int winners = 2;winners<=players;winners++){
+			squares += (double) splitPots[player * (players + 1) + winners] / (winners * winners);
+		}
+		return squares;
+	}
+
+	/**
+	 * @return standard error of the player's equity, if the games are random samples
+	 */
+	double getStandardError(int player) {
+		if (games < 2) {
+			return Double.POSITIVE_INFINITY;
+		}
+		double mean = getPotsWonTied(player) / games;
+		double variance = (getPotsWonTiedSquares(player) / games - mean * mean) * games / (games - 1);
+		return Math.sqrt(Math.max(0, variance) / games);
+	}
+
+	/**
+	 * Adds the counters to the hand infos of the result
+	 */
+	void applyTo(Result result) {
+		for (int i = 0;i<players;i++){
+			HandInfo handInfo = result.getHandInfo(i);
+			handInfo.addGames(games, potsWon[i], potsTied[i], getPotsWonTied(i));
+			for (int winners = 2;winners<=players;winners++){
+				handInfo.addSplitPots(winners, getSplitPots(i, winners));
+			}
+		}
+	}
+
+	private static long gcd(long a, long b) {
+		return b == 0 ? a : gcd(b, a % b);
+	}
+}
@@ -0,0 +1,18 @@
+/**
+ * @author m1
+ */
+package mi.poker.calculation;
+
+/**
+ * Receives intermediate results of a running {@link MonteCarloSimulation}
+ * @see MonteCarloSimulation#setResultListener(ResultListener, int, long, java.util.concurrent.TimeUnit)
+ */
+public interface ResultListener {
+	/**
+	 * Called from the simulating thread, while the workers of a parallel simulation run the next round
+	 * @param snapshot counters and statistics of all trials so far, with standard errors. A new result on
+	 * every call, the simulation does not change it afterwards.
+	 * @param done true for the last snapshot, it has the same counters as the returned result
+	 */
+	public void resultUpdated(Result snapshot, boolean done);
+}
@@ -0,0 +1,79 @@
+package mi.poker.calculation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author m1
+ * When a {@link MonteCarloSimulation} stops. The simulation stops as soon as any of the limits is reached:
+ * <ul>
+ * <li>number of trials</li>
+ * <li>standard error of the equity estimate, checked for every player</li>
+ * <li>wall-clock time</li>
+ * </ul>
+ * Instances are immutable, {@code with*} methods return a modified copy:
+ * <PRE>
+ * StoppingRule.DEFAULT.withStandardError(0.001).withTimeBudget(50, TimeUnit.MILLISECONDS)
+ * </PRE>
+ */
+public final class StoppingRule {
+
+	/**
+	 * 1,000,000 trials, no other limits
+	 */
+	public static final StoppingRule DEFAULT = new StoppingRule(MonteCarloSimulation.DEFAULT_TRIALS, 0, 0);
+
+	private final int maxTrials;
+	private final double standardError;
+	private final long timeBudgetNanos;
+
+	private StoppingRule(int maxTrials, double standardError, long timeBudgetNanos) {
+		if (maxTrials < 1) {
+			throw new IllegalArgumentException("maxTrials must be positive: " + maxTrials);
+		}
+		if (standardError < 0 || timeBudgetNanos < 0) {
+			throw new IllegalArgumentException("Limits can not be negative");
+		}
+		this.maxTrials = maxTrials;
+		this.standardError = standardError;
+		this.timeBudgetNanos = timeBudgetNanos;
+	}
+
+	/**
+	 * @param maxTrials the simulation never runs more trials
+	 */
+	public StoppingRule withMaxTrials(int maxTrials) {
+		return new StoppingRule(maxTrials, standardError, timeBudgetNanos);
+	}
+
+	/**
+	 * @param standardError stop when the standard error of every player's equity is at most this,
+	 * e.g. 0.001 for about +-0.2% equity at 95% confidence. 0 disables the check
+	 */
+	public StoppingRule withStandardError(double standardError) {
+		return new StoppingRule(maxTrials, standardError, timeBudgetNanos);
+	}
+
+	/**
+	 * @param budget stop when the simulation runs longer, 0 disables the check
+	 */
+	public StoppingRule withTimeBudget(long budget, TimeUnit unit) {
+		return new StoppingRule(maxTrials, standardError, unit.toNanos(budget));
+	}
+
+	public int getMaxTrials() {
+		return maxTrials;
+	}
+
+	public double getStandardError() {
+		return standardError;
+	}
+
+	public long getTimeBudgetNanos() {
+		return timeBudgetNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "maxTrials " + maxTrials + " standardError " + standardError + " timeBudget " + timeBudgetNanos / 1000000 + "ms";
+	}
+}
@@ -0,0 +1,50 @@
+package mi.poker.common.evaluator;
+
+/**
+ * @author m1
+ * Available {@link HandEvaluator} backends.
+ */
+public enum EvaluatorType {
+	/**
+	 * Steve Brecher's bit mask evaluator, small tables, no files needed
+	 */
+	HAND_EVAL {
+		@Override
+		public HandEvaluator create() {
+			return new HandEvalEvaluator();
+		}
+	},
+	/**
+	 * 2+2 state table, ~130 MB memory-mapped table, fastest lookups
+	 */
+	STATE_TABLE {
+		@Override
+		public HandEvaluator create() {
+			return new StateTableHandEvaluator();
+		}
+	},
+	/**
+	 * Klaatu's finite state transducer, ~640 KB of tables
+	 */
+	FAST_EVAL {
+		@Override
+		public HandEvaluator create() {
+			return new FastEvalEvaluator();
+		}
+	},
+	/**
+	 * Klaatu's finite state transducer evaluated card by card, the board is set only once.
+	 * Instances are not thread-safe.
+	 */
+	STAGED_FAST_EVAL {
+		@Override
+		public HandEvaluator create() {
+			return new StagedFastEvalEvaluator();
+		}
+	};
+
+	/**
+	 * @return new evaluator instance of this type
+	 */
+	public abstract HandEvaluator create();
+}
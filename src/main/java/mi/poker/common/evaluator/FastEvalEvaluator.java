@@ -0,0 +1,41 @@
+package mi.poker.common.evaluator;
+
+import mi.poker.common.model.testbed.klaatu.PartialStageFastEval;
+
+/**
+ * @author m1
+ * {@link HandEvaluator} backed by the {@link PartialStageFastEval#eval7} finite state transducer
+ * (tables generated by HandFST). The board state packs the 5 board cards. Thread-safe.
+ */
+public class FastEvalEvaluator implements HandEvaluator {
+
+	// canonical card index -> FST card encoding (rank << 2 | suit)
+	static final int[] CARDS = new int[52];
+	static {
+		for (int i = 0; i < 52; i++) {
+			CARDS[i] = PartialStageFastEval.encode(i % 13, i / 13);
+		}
+	}
+
+	public int evaluate(int c1, int c2, int c3, int c4, int c5, int c6, int c7) {
+		return PartialStageFastEval.toBrecher7(PartialStageFastEval.eval7(CARDS[c1], CARDS[c2], CARDS[c3],
+				CARDS[c4], CARDS[c5], CARDS[c6], CARDS[c7]));
+	}
+
+	public long boardState(int b1, int b2, int b3, int b4, int b5) {
+		return pack(b1, b2, b3, b4, b5);
+	}
+
+	public int evaluate(long boardState, int h1, int h2) {
+		int s = (int) boardState;
+		return PartialStageFastEval.toBrecher7(PartialStageFastEval.eval7(CARDS[s & 0x3F], CARDS[(s >>> 6) & 0x3F],
+				CARDS[(s >>> 12) & 0x3F], CARDS[(s >>> 18) & 0x3F], CARDS[(s >>> 24) & 0x3F], CARDS[h1], CARDS[h2]));
+	}
+
+	/**
+	 * @return the 5 card indexes packed in 6 bit fields
+	 */
+	static long pack(int b1, int b2, int b3, int b4, int b5) {
+		return b1 | (b2 << 6) | (b3 << 12) | (b4 << 18) | (b5 << 24);
+	}
+}
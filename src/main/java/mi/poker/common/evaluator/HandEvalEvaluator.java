@@ -0,0 +1,31 @@
+package mi.poker.common.evaluator;
+
+import mi.poker.common.model.testbed.klaatu.HandEval;
+
+/**
+ * @author m1
+ * {@link HandEvaluator} backed by {@link HandEval#hand7Eval(long)}.
+ * The board state is the bit mask of the board cards. Thread-safe.
+ */
+public class HandEvalEvaluator implements HandEvaluator {
+
+	// canonical card index is the bit of the card in HandEval format
+	private static final long[] MASKS = new long[52];
+	static {
+		for (int i = 0; i < 52; i++) {
+			MASKS[i] = 1L << i;
+		}
+	}
+
+	public int evaluate(int c1, int c2, int c3, int c4, int c5, int c6, int c7) {
+		return HandEval.hand7Eval(MASKS[c1] | MASKS[c2] | MASKS[c3] | MASKS[c4] | MASKS[c5] | MASKS[c6] | MASKS[c7]);
+	}
+
+	public long boardState(int b1, int b2, int b3, int b4, int b5) {
+		return MASKS[b1] | MASKS[b2] | MASKS[b3] | MASKS[b4] | MASKS[b5];
+	}
+
+	public int evaluate(long boardState, int h1, int h2) {
+		return HandEval.hand7Eval(boardState | MASKS[h1] | MASKS[h2]);
+	}
+}
@@ -0,0 +1,34 @@
+package mi.poker.common.evaluator;
+
+/**
+ * @author m1
+ * Common interface of the 7 card hand evaluators.
+ * <p>
+ * Cards are given by their canonical index {@code suit*13 + rank} (0 = 2c .. 51 = As), the same as
+ * {@link mi.poker.common.model.testbed.klaatu.Card#index()}. Every implementation returns values in
+ * {@link mi.poker.common.model.testbed.klaatu.HandEval} format, so results of different evaluators
+ * are comparable: a higher value is a better hand, equal values are a tie.
+ * <p>
+ * When many hands share the same board, the board can be prepared once with
+ * {@link #boardState(int, int, int, int, int)} and every hand finished with {@link #evaluate(long, int, int)}.
+ */
+public interface HandEvaluator {
+
+	/**
+	 * @return value of the best 5 card hand from 7 cards
+	 */
+	public int evaluate(int c1, int c2, int c3, int c4, int c5, int c6, int c7);
+
+	/**
+	 * @return opaque state of a 5 card board, valid only for this evaluator
+	 */
+	public long boardState(int b1, int b2, int b3, int b4, int b5);
+
+	/**
+	 * @param boardState state returned by {@link #boardState(int, int, int, int, int)}
+	 * @param h1 first hole card
+	 * @param h2 second hole card
+	 * @return value of the best 5 card hand from board and hole cards
+	 */
+	public int evaluate(long boardState, int h1, int h2);
+}
@@ -0,0 +1,39 @@
+package mi.poker.common.evaluator;
+
+import mi.poker.common.model.testbed.klaatu.PartialStageFastEval;
+
+/**
+ * @author m1
+ * {@link HandEvaluator} which feeds the board cards into a {@link PartialStageFastEval} once,
+ * and evaluates every hand on the same board with only the two hole card stages.
+ * Keeps the staged board, so an instance must not be shared between threads.
+ */
+public class StagedFastEvalEvaluator implements HandEvaluator {
+
+	private static final int[] CARDS = FastEvalEvaluator.CARDS;
+
+	private final PartialStageFastEval eval = new PartialStageFastEval();
+	private long stagedBoard = -1;
+
+	public int evaluate(int c1, int c2, int c3, int c4, int c5, int c6, int c7) {
+		return evaluate(boardState(c1, c2, c3, c4, c5), c6, c7);
+	}
+
+	public long boardState(int b1, int b2, int b3, int b4, int b5) {
+		return FastEvalEvaluator.pack(b1, b2, b3, b4, b5);
+	}
+
+	public int evaluate(long boardState, int h1, int h2) {
+		if (boardState != stagedBoard) {
+			int s = (int) boardState;
+			eval.setCard1(CARDS[s & 0x3F]);
+			eval.setCard2(CARDS[(s >>> 6) & 0x3F]);
+			eval.setCard3(CARDS[(s >>> 12) & 0x3F]);
+			eval.setCard4(CARDS[(s >>> 18) & 0x3F]);
+			eval.setCard5(CARDS[(s >>> 24) & 0x3F]);
+			stagedBoard = boardState;
+		}
+		eval.setCard6(CARDS[h1]);
+		return PartialStageFastEval.toBrecher7(eval.setHand7(CARDS[h2]));
+	}
+}
@@ -0,0 +1,51 @@
+package mi.poker.common.evaluator;
+
+import mi.poker.common.model.testbed.klaatu.PartialStageFastEval;
+import mi.poker.common.model.testbed.spears2p2.StateTableEvaluator;
+
+/**
+ * @author m1
+ * {@link HandEvaluator} backed by the 2+2 {@link StateTableEvaluator}.
+ * The board state is the state table position after the 5 board cards. Thread-safe.
+ */
+public class StateTableHandEvaluator implements HandEvaluator {
+
+	// canonical card index -> state table card number (1..52)
+	private static final int[] CARDS = new int[52];
+	static {
+		for (int i = 0; i < 52; i++) {
+			int suit = i / 13;
+			int rank = i % 13;
+			CARDS[i] = rank * 4 + suit + 1;
+		}
+	}
+
+	// both tables enumerate the 7462 distinct 5 card hands from worst to best
+	private static final int[] TO_HAND_EVAL = new int[7462];
+	static {
+		for (int i = 0; i < TO_HAND_EVAL.length; i++) {
+			TO_HAND_EVAL[i] = PartialStageFastEval.toBrecher5(i);
+		}
+	}
+
+	public StateTableHandEvaluator() {
+		StateTableEvaluator.initialize();
+	}
+
+	public int evaluate(int c1, int c2, int c3, int c4, int c5, int c6, int c7) {
+		return evaluate(boardState(c1, c2, c3, c4, c5), c6, c7);
+	}
+
+	public long boardState(int b1, int b2, int b3, int b4, int b5) {
+		int state = StateTableEvaluator.START_STATE;
+		state = StateTableEvaluator.nextState(state, CARDS[b1]);
+		state = StateTableEvaluator.nextState(state, CARDS[b2]);
+		state = StateTableEvaluator.nextState(state, CARDS[b3]);
+		state = StateTableEvaluator.nextState(state, CARDS[b4]);
+		return StateTableEvaluator.nextState(state, CARDS[b5]);
+	}
+
+	public int evaluate(long boardState, int h1, int h2) {
+		return TO_HAND_EVAL[StateTableEvaluator.getRank((int) boardState, CARDS[h1], CARDS[h2])];
+	}
+}
@@ -74,6 +74,24 @@ public class Card implements Comparable<Card> {
         return theCards[suit.ordinal()*13 + rank.ordinal()];
     }
 
+    /**
+     * Returns a pre-existing instance of {@link Card} by its index.
+     * @param index card index from 0 (2c) to 51 (As), see {@link #index()}
+     * @return an instance of {@link Card} with the specified index.
+     */
+    public static Card getInstance(int index) {
+        return theCards[index];
+    }
+
+    /**
+     * Returns the index of this card in the internal 52 cards storage,
+     * {@code suit.ordinal()*13 + rank.ordinal()}. This is also the bit of the card in {@link HandEval#encode(Card)}.
+     * @return card index from 0 (2c) to 51 (As).
+     */
+    public int index() {
+        return suit.ordinal()*13 + rank.ordinal();
+    }
+
     /**
      * Returns a pre-existing instance of {@link Card} of the specified rank and suit.
      * @param rs a {@link String} of length 2, where the first character is in {@link Card.Rank#RANK_CHARS} and
@@ -173,6 +173,13 @@ public class CardSet implements Set<Card> {
         Collections.shuffle(cards);
     }
 
+    /**
+     * @param random source of the order, for shuffles that can be repeated
+     */
+    public void shuffle(Random random) {
+        Collections.shuffle(cards, random);
+    }
+
     public int size() {
         return cards.size();
     }
@@ -189,7 +196,15 @@ public class CardSet implements Set<Card> {
      * @return one card from deck. extract this card from deck
      */
     public Card dealCard(){
-    	return cards.remove(RANDOM.nextInt(cards.size()));
+    	return dealCard(RANDOM);
+    }
+
+    /**
+     * @param random picks the card, for deals that can be repeated
+     * @return one card from deck. extract this card from deck
+     */
+    public Card dealCard(Random random){
+    	return cards.remove(random.nextInt(cards.size()));
     }
     
     public Card get(int i){
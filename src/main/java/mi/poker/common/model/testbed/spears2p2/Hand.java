@@ -89,6 +89,13 @@ public class Hand {
 	}
 
 	public Card removeRandom() {
+		return removeRandom(random);
+	}
+
+	/**
+	 * @param random picks the card, for deals that can be repeated
+	 */
+	public Card removeRandom(Random random) {
 		int cardNo;
 		do {
 			cardNo = random.nextInt(52);
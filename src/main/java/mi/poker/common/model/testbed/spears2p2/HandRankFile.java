@@ -0,0 +1,120 @@
+package mi.poker.common.model.testbed.spears2p2;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import mi.poker.common.utils.AtomicFile;
+
+/**
+ * Raw binary storage of the {@link StateTableEvaluator} hand rank table.
+ * <p>
+ * The file is a 24 byte header followed by the table entries, everything little-endian:
+ * <PRE>
+ * offset  0  int   magic "2P2R"
+ * offset  4  int   format version
+ * offset  8  int   number of entries
+ * offset 12  int   reserved, always 0
+ * offset 16  long  CRC32 of the entries
+ * offset 24  int[] entries
+ * </PRE>
+ * The table is opened with {@link FileChannel#map}, so lookups read straight from the page cache
+ * and every JVM on the machine shares the same physical pages.
+ */
+public final class HandRankFile {
+
+	static final int MAGIC = 0x52503250; // "2P2R" in little-endian
+	static final int VERSION = 1;
+	static final int HEADER_SIZE = 24;
+
+	private static final int WRITE_CHUNK = 1 << 16; // entries per write
+
+	private HandRankFile() {}
+
+	/**
+	 * Writes the table through {@link AtomicFile}, so concurrent readers never see a half written table.
+	 * @throws java.nio.file.AtomicMoveNotSupportedException if the file system can not replace the file atomically
+	 */
+	public static void write(final int[] table, File file) throws IOException {
+		AtomicFile.write(file, new AtomicFile.Content() {
+			@Override
+			public void writeTo(FileChannel channel) throws IOException {
+				writeTable(table, channel);
+			}
+		});
+	}
+
+	private static void writeTable(int[] table, FileChannel channel) throws IOException {
+		channel.position(HEADER_SIZE);
+
+		CRC32 crc = new CRC32();
+		ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_CHUNK * 4).order(ByteOrder.LITTLE_ENDIAN);
+		for (int from = 0; from < table.length; from += WRITE_CHUNK) {
+			int to = Math.min(table.length, from + WRITE_CHUNK);
+			buffer.clear();
+			buffer.asIntBuffer().put(table, from, to - from);
+			buffer.limit((to - from) * 4);
+			crc.update(buffer.duplicate());
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(MAGIC).putInt(VERSION).putInt(table.length).putInt(0).putLong(crc.getValue());
+		header.flip();
+		channel.position(0);
+		while (header.hasRemaining()) {
+			channel.write(header);
+		}
+	}
+
+	/**
+	 * Maps the table read-only.
+	 * @param file table written by {@link #write(int[], File)}
+	 * @param expectedSize expected number of entries
+	 * @param verifyChecksum if true, the CRC32 of the entries is checked, which touches every page once
+	 * @return little-endian view of the entries
+	 * @throws IOException if the file is truncated, has a wrong header or a wrong checksum
+	 */
+	public static IntBuffer map(File file, int expectedSize, boolean verifyChecksum) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long length = channel.size();
+			if (length < HEADER_SIZE) {
+				throw new IOException(file + " is too short to be a hand rank table");
+			}
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+			mapped.order(ByteOrder.LITTLE_ENDIAN);
+			if (mapped.getInt(0) != MAGIC) {
+				throw new IOException(file + " is not a hand rank table");
+			}
+			if (mapped.getInt(4) != VERSION) {
+				throw new IOException(file + " has unsupported version " + mapped.getInt(4));
+			}
+			int entries = mapped.getInt(8);
+			if (entries != expectedSize || length != HEADER_SIZE + 4L * entries) {
+				throw new IOException(file + " has " + entries + " entries in " + length + " bytes, expected " + expectedSize);
+			}
+			mapped.position(HEADER_SIZE);
+			ByteBuffer payload = mapped.slice().order(ByteOrder.LITTLE_ENDIAN);
+			if (verifyChecksum) {
+				CRC32 crc = new CRC32();
+				crc.update(payload.duplicate());
+				if (crc.getValue() != mapped.getLong(16)) {
+					throw new IOException(file + " is corrupted, checksum mismatch");
+				}
+			}
+			return payload.asIntBuffer();
+		} finally {
+			raf.close(); // the mapping stays valid after the channel is closed
+		}
+	}
+}
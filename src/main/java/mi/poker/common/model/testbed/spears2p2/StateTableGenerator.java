@@ -0,0 +1,526 @@
+package mi.poker.common.model.testbed.spears2p2;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Parallel generator of the {@link StateTableEvaluator} hand rank table.
+ * <p>
+ * Every key of an n-card hand is produced by adding one card to a key of an (n-1)-card hand,
+ * and keys with more cards are always numerically greater. So the sorted key array is built
+ * level by level (0..6 cards), each level from the previous one. Once all keys are known every
+ * row of the table (53 entries per key) is independent, and rows are filled by a fork-join pool.
+ * Each worker thread keeps its own scratch state, nothing is shared but the read-only key array.
+ * <p>
+ * The produced table is identical to the one of the original single threaded generator.
+ */
+public class StateTableGenerator {
+
+	/**
+	 * Receives generation progress. May be called from pool worker threads.
+	 */
+	public interface ProgressListener {
+		/**
+		 * @param phase current phase
+		 * @param done keys levels (KEYS phase) or table rows (RANKS phase) done so far
+		 * @param total total number of levels or rows
+		 */
+		void progress(Phase phase, int done, int total);
+	}
+
+	public enum Phase { KEYS, RANKS }
+
+	private final static int NUM_SUITS = 4;
+	private final static int NUM_RANKS = 13;
+	private final static int MAX_KEY_CARDS = 6;	// keys are built for hands up to 6 cards, 7th card gives the rank
+	private final static int ROWS_PER_TASK = 2048;
+
+	private final static int[] PRIMES = {2, 3, 5, 7, 11, 13, 17, 19, 23, 29, 31, 37, 41};
+
+	private final ForkJoinPool pool;
+	private final ProgressListener listener;
+
+	// re-usable scratch state, one per worker thread
+	private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	private long[] keys;		// sorted keys, keys[0] == 0 is the empty hand
+	private int[] handRanks;
+	private AtomicInteger rowsDone;
+
+	public StateTableGenerator() {
+		this(ForkJoinPool.commonPool(), null);
+	}
+
+	public StateTableGenerator(ForkJoinPool pool, ProgressListener listener) {
+		this.pool = pool;
+		this.listener = listener;
+	}
+
+	/**
+	 * @param handRanks table to fill, at least (number of keys + 1) * 53 entries
+	 */
+	public void generate(int[] handRanks) {
+		this.handRanks = handRanks;
+		this.keys = generateKeys();
+		this.rowsDone = new AtomicInteger();
+		pool.invoke(new RanksTask(0, keys.length));
+		this.keys = null;
+		this.handRanks = null;
+	}
+
+	/**
+	 * @return sorted keys of all hands up to 6 cards, starting with the empty hand
+	 */
+	long[] generateKeys() {
+		long[][] levels = new long[MAX_KEY_CARDS + 1][];
+		levels[0] = new long[] {0};
+		int total = 1;
+		for (int level = 1; level <= MAX_KEY_CARDS; level++) {
+			long[] previous = levels[level - 1];
+			levels[level] = pool.invoke(new KeysTask(previous, 0, previous.length));
+			total += levels[level].length;
+			fireProgress(Phase.KEYS, level, MAX_KEY_CARDS);
+		}
+		long[] result = new long[total];
+		int offset = 0;
+		for (long[] level : levels) {
+			System.arraycopy(level, 0, result, offset, level.length);
+			offset += level.length;
+		}
+		return result;
+	}
+
+	private void fireProgress(Phase phase, int done, int total) {
+		if (listener != null) {
+			listener.progress(phase, done, total);
+		}
+	}
+
+	// Builds the sorted keys of the next level from a range of keys of the current level.
+	private class KeysTask extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 1024;
+
+		private final long[] baseKeys;
+		private final int from;
+		private final int to;
+
+		KeysTask(long[] baseKeys, int from, int to) {
+			this.baseKeys = baseKeys;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (to - from > THRESHOLD) {
+				int middle = (from + to) >>> 1;
+				KeysTask left = new KeysTask(baseKeys, from, middle);
+				left.fork();
+				long[] right = new KeysTask(baseKeys, middle, to).compute();
+				return mergeUnique(left.join(), right);
+			}
+			Scratch s = scratch.get();
+			long[] result = new long[(to - from) * 52];
+			int count = 0;
+			for (int i = from; i < to; i++) {
+				for (int card = 1; card < 53; card++) {
+					long key = makeKey(s, baseKeys[i], card);
+					if (key != 0 && s.numCards < 7) {
+						result[count++] = key;
+					}
+				}
+			}
+			Arrays.sort(result, 0, count);
+			return unique(result, count);
+		}
+	}
+
+	// Fills the table rows of a range of keys.
+	private class RanksTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int from;
+		private final int to;
+
+		RanksTask(int from, int to) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > ROWS_PER_TASK) {
+				int middle = (from + to) >>> 1;
+				invokeAll(new RanksTask(from, middle), new RanksTask(middle, to));
+				return;
+			}
+			Scratch s = scratch.get();
+			for (int keyIndex = from; keyIndex < to; keyIndex++) {
+				fillRow(s, keyIndex);
+			}
+			fireProgress(Phase.RANKS, rowsDone.addAndGet(to - from), keys.length);
+		}
+	}
+
+	private void fillRow(Scratch s, int keyIndex) {
+		long baseKey = keys[keyIndex];
+		for (int card = 1; card < 53; card++) {
+			long key = makeKey(s, baseKey, card);
+			int handRank;
+			if (s.numCards < 7) {
+				handRank = indexOf(key) * 53 + 53;		// if number of cards is < 7 link to the key's row
+			}
+			else {
+				handRank = getHandRank(s, key);			// if number of cards is 7 store hand rank
+			}
+			handRanks[keyIndex * 53 + card + 53] = handRank;
+		}
+
+		// numCards is left by the last makeKey call, exactly like the original generator did
+		if (s.numCards == 6 || s.numCards == 7) {
+			handRanks[keyIndex * 53 + 53] = getHandRank(s, baseKey);
+		}
+	}
+
+	private int indexOf(long key) {
+		if (key == 0) {
+			return 0;
+		}
+		return Arrays.binarySearch(keys, key);
+	}
+
+	private static long[] unique(long[] sorted, int count) {
+		int n = 0;
+		for (int i = 0; i < count; i++) {
+			if (n == 0 || sorted[n - 1] != sorted[i]) {
+				sorted[n++] = sorted[i];
+			}
+		}
+		return Arrays.copyOf(sorted, n);
+	}
+
+	private static long[] mergeUnique(long[] a, long[] b) {
+		long[] result = new long[a.length + b.length];
+		int i = 0, j = 0, n = 0;
+		while (i < a.length || j < b.length) {
+			long next;
+			if (j == b.length || (i < a.length && a[i] <= b[j])) {
+				next = a[i++];
+			} else {
+				next = b[j++];
+			}
+			if (n == 0 || result[n - 1] != next) {
+				result[n++] = next;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	// Per thread scratch state.
+	private static class Scratch {
+		final int[] hand = new int[8];
+		final int[] suitCount = new int[NUM_SUITS + 1];
+		final int[] rankCount = new int[NUM_RANKS + 1];
+		int numCards;
+	}
+
+	// Returns a key for the hand created by adding a new card to the hand
+	// represented by the given key.	Returns 0 if new card already appears in hand.
+	// Leaves the number of examined cards in s.numCards.
+	private static long makeKey(Scratch s, long baseKey, int newCard) {
+
+		int[] suitCount = s.suitCount; 	// number of times a suit appears in a hand
+		int[] rankCount = s.rankCount;	// number of times a rank appears in a hand
+		int[] hand = s.hand;
+		Arrays.fill(suitCount, 0);
+		Arrays.fill(rankCount, 0);
+		Arrays.fill(hand, 0);
+
+		// extract the hand represented by the key value
+		for (int cardIndex = 0; cardIndex < 6; cardIndex++) {
+
+			// hand[0] is used to hold the new card
+			hand[cardIndex + 1] = (int)((baseKey >>> (8 * cardIndex)) & 0xFF);
+		}
+
+		hand[0] = formatCard8bit(newCard);
+
+		// examine the hand to determine number of cards and rank/suit counts
+		int numCards;
+		for (numCards = 0; hand[numCards] != 0; numCards++) {
+			suitCount[hand[numCards] & 0xF]++;
+			rankCount[(hand[numCards] >>> 4) & 0xF]++;
+
+			// check to see if new card is already contained in hand (rank and suit considered)
+			if (numCards != 0 && hand[0] == hand[numCards]) {
+				s.numCards = numCards;
+				return 0;
+			}
+		}
+		s.numCards = numCards;
+
+		// check to see if we already have four of a particular rank
+		if (numCards > 4) {
+			for (int rank = 1; rank < 14; rank++) {
+				if (rankCount[rank] > 4) return 0;
+			}
+		}
+
+		// determine the minimum number of suits required for a flush to be possible
+		int minSuitCount = numCards - 2;
+
+		// check to see if suit is significant
+		if (minSuitCount > 1) {
+			// examine each card in the hand
+			for (int cardIndex = 0; cardIndex < numCards; cardIndex++) {
+				// if the suit is not significant then strip it from the card
+				if (suitCount[hand[cardIndex] & 0xF] < minSuitCount) {
+					hand[cardIndex] &= 0xF0;
+				}
+			}
+		}
+
+		sortHand(hand);
+
+		long key = 0;
+		for (int i = 0; i < 7; i++) {
+			key += (long)hand[i] << (i * 8);
+		}
+
+		return key;
+
+	} // END makeKey method
+
+
+
+	// Formats and returns a card in 8-bit packed representation.
+	private static int formatCard8bit(int card) {
+
+        // 8-Bit Packed Card Representation
+        // +--------+
+        // |rrrr--ss|
+        // +--------+
+        // r = rank of card		(deuce = 1, trey = 2, four = 3, five = 4,..., ace = 13)
+	// s = suit of card		(suits are arbitrary, can take value from 0 to 3)
+
+		card--;
+		return (((card >>> 2) + 1) << 4) + (card & 3) + 1;
+
+	} // END formatCard8bit method
+
+
+
+	// Sorts the hand using Bose-Nelson Sorting Algorithm (N = 7).
+	private static void sortHand(int[] hand) {
+		swapCard(hand, 0, 4);
+		swapCard(hand, 1, 5);
+		swapCard(hand, 2, 6);
+		swapCard(hand, 0, 2);
+		swapCard(hand, 1, 3);
+		swapCard(hand, 4, 6);
+		swapCard(hand, 2, 4);
+		swapCard(hand, 3, 5);
+		swapCard(hand, 0, 1);
+		swapCard(hand, 2, 3);
+		swapCard(hand, 4, 5);
+		swapCard(hand, 1, 4);
+		swapCard(hand, 3, 6);
+		swapCard(hand, 1, 2);
+		swapCard(hand, 3, 4);
+		swapCard(hand, 5, 6);
+	} // End sortHand method
+
+
+
+	// Swaps card i with card j.
+	private static void swapCard(int[] hand, int i, int j) {
+		if (hand[i] < hand[j]) {
+			hand[i] ^= hand[j];
+			hand[j] ^= hand[i];
+			hand[i] ^= hand[j];
+		}
+	} // END swapCard method
+
+
+
+	// Determines the relative strength of a hand (the hand is given by its unique key value).
+	private static int getHandRank(Scratch s, long key) {
+
+		// The following method implements a modified version of "Cactus Kev's Five-Card
+		// Poker Hand Evaluator" to determine the relative strength of two five-card hands.
+		// Reference: http://www.suffecool.net/poker/evaluator.html
+
+		int[] hand = s.hand;
+		Arrays.fill(hand, 0);
+		int currentCard;
+		int rank;
+		int handRank = 9999;
+		int holdrank = 9999;
+		int suit     = 0;
+		int numCards = 0;
+
+        if (key != 0) {
+
+            for (int cardIndex = 0; cardIndex < 7; cardIndex++) {
+
+            	currentCard = (int)((key >>> (8 * cardIndex)) & 0xFF);
+                if (currentCard == 0) break;
+                numCards++;
+
+                // Cactus Kev Card Representation
+                // +--------+--------+--------+--------+
+                // |xxxbbbbb|bbbbbbbb|cdhsrrrr|xxpppppp|
+                // +--------+--------+--------+--------+
+                // p    = prime number of rank (deuce = 2, trey = 3, four = 5, five = 7,..., ace = 41)
+                // r    = rank of card         (deuce = 0, trey = 1, four = 2, five = 3,..., ace = 12)
+                // cdhs = suit of card
+                // b    = bit turned on depending on rank of card
+
+                // extract suit and rank from 8-bit packed representation
+                rank = (currentCard >>> 4) - 1;
+                suit = currentCard & 0xF;
+
+                // change card representation to Cactus Kev Representation
+                hand[cardIndex] = PRIMES[rank] | (rank << 8) | (1 << (suit + 11)) | (1 << (16 + rank));
+            }
+
+            switch (numCards) {
+                case 5 :
+
+                	holdrank = eval_5hand(hand[0],hand[1],hand[2],hand[3],hand[4]);
+                	break;
+
+                case 6 :
+
+                	// Cactus Kev's Evaluator ranks hands from 1 (Royal Flush) to 7462 (Seven High Card)
+                    holdrank = eval_5hand(                   hand[0],hand[1],hand[2],hand[3],hand[4]);
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[2],hand[3],hand[5]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[2],hand[4],hand[5]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[3],hand[4],hand[5]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[2],hand[3],hand[4],hand[5]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[1],hand[2],hand[3],hand[4],hand[5]));
+                    break;
+
+                case 7 :
+
+                    holdrank = eval_5hand(                   hand[0],hand[1],hand[2],hand[3],hand[4]);
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[2],hand[3],hand[5]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[2],hand[3],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[2],hand[4],hand[5]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[2],hand[4],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[2],hand[5],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[3],hand[4],hand[5]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[3],hand[4],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[3],hand[5],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[1],hand[4],hand[5],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[2],hand[3],hand[4],hand[5]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[2],hand[3],hand[4],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[2],hand[3],hand[5],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[2],hand[4],hand[5],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[0],hand[3],hand[4],hand[5],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[1],hand[2],hand[3],hand[4],hand[5]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[1],hand[2],hand[3],hand[4],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[1],hand[2],hand[3],hand[5],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[1],hand[2],hand[4],hand[5],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[1],hand[3],hand[4],hand[5],hand[6]));
+                    holdrank = Math.min(holdrank, eval_5hand(hand[2],hand[3],hand[4],hand[5],hand[6]));
+                    break;
+
+                default :
+
+                    System.out.println("ERROR: Invalid hand in GetRank method.");
+                    break;
+
+            }
+
+            // Hand Rank Representation
+            // +--------+--------+
+            // |hhhheeee|eeeeeeee|
+            // +--------+--------+
+            // h    = poker hand	    (1 = High Card, 2 = One Pair, 3 = Two Pair,..., 9 = Straight Flush)
+            // e    = equivalency class (Rank of equivalency class relative to base hand)
+
+            // +-----------------------------------+----------------------------------+-----------------+
+            // 		5-Card Equivalency Classes			7-Card Equivalency Classes
+            // +-----------------------------------+----------------------------------+-----------------+
+            // 	        1277     							 407		High Card
+            //		2860 								1470		One Pair
+            //		 858 								 763		Two Pair
+            //		 858 								 575		Three of a Kind
+            //		  10 								  10		Straight
+            //		1277 								1277		Flush
+            //		 156 								 156		Full House
+            //		 156 								 156		Four of a Kind
+            //		  10								  10		Straight Flush
+            // +----------+------------------------+----------------------------------+-----------------+
+            //    Total:    7462								4824
+            // +----------+------------------------+----------------------------------+-----------------+
+
+            handRank = 7463 - holdrank;  // Invert ranking metric (1 is now worst hand)
+
+            if      (handRank < 1278) handRank = handRank -    0 + 4096 * 1; // High Card
+            else if (handRank < 4138) handRank = handRank - 1277 + 4096 * 2; // One Pair
+            else if (handRank < 4996) handRank = handRank - 4137 + 4096 * 3; // Two Pair
+            else if (handRank < 5854) handRank = handRank - 4995 + 4096 * 4; // Three of a Kind
+            else if (handRank < 5864) handRank = handRank - 5853 + 4096 * 5; // Straight
+            else if (handRank < 7141) handRank = handRank - 5863 + 4096 * 6; // Flush
+            else if (handRank < 7297) handRank = handRank - 7140 + 4096 * 7; // Full House
+            else if (handRank < 7453) handRank = handRank - 7296 + 4096 * 8; // Four of a Kind
+            else                      handRank = handRank - 7452 + 4096 * 9; // Straight Flush
+
+        }
+        return handRank;
+
+	} // END getHandRank method
+
+	private static int getIndex(int key) {
+
+		// use binary search to find key
+		int low = -1;
+		int high = 4888;
+		int pivot;
+
+		while (high - low > 1) {
+			pivot = (low + high) >>> 1;
+			if (Products.table[pivot] > key) {
+				high = pivot;
+			}
+			else if (Products.table[pivot] < key) {
+				low = pivot;
+			}
+			else {
+				return pivot;
+			}
+		}
+		return -1;
+
+	} // END getIndex method
+
+
+
+	private static int eval_5hand(int c1, int c2, int c3, int c4, int c5) {
+		int   q = (c1 | c2 | c3 | c4 | c5) >> 16;
+		short s;
+
+		// check for Flushes and Straight Flushes
+		if ((c1 & c2 & c3 & c4 & c5 & 0xF000) != 0) return Flushes.table[q];
+
+		// check for Straights and High Card hands
+		if ((s = Unique.table[q]) != 0) return s;
+
+		q = (c1 & 0xFF) * (c2 & 0xFF) * (c3 & 0xFF) * (c4 & 0xFF) * (c5 & 0xFF);
+		q = getIndex(q);
+
+		return Values.table[q];
+
+	} // END eval_5hand method
+}
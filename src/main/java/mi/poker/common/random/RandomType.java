@@ -0,0 +1,65 @@
+package mi.poker.common.random;
+
+import java.util.Random;
+
+/**
+ * @author m1
+ * Available random generators of the simulations. A simulation creates one generator from its seed and
+ * takes the generators of its substreams from it one after the other, so the same seed always gives the
+ * same substreams.
+ */
+public enum RandomType {
+	/**
+	 * xoroshiro128++, substreams are 2^64 numbers apart. Fastest.
+	 */
+	XOROSHIRO {
+		@Override
+		public Random create(long seed) {
+			return new Xoroshiro128PlusPlus(seed);
+		}
+
+		@Override
+		public Random split(Random streams) {
+			return ((Xoroshiro128PlusPlus) streams).split();
+		}
+	},
+	/**
+	 * {@link java.util.SplittableRandom}, substreams are split from it
+	 */
+	SPLITTABLE {
+		@Override
+		public Random create(long seed) {
+			return new SplittableRandomAdapter(seed);
+		}
+
+		@Override
+		public Random split(Random streams) {
+			return ((SplittableRandomAdapter) streams).split();
+		}
+	},
+	/**
+	 * {@link java.util.Random}, substreams are seeded by it. Synchronized and the slowest, for comparison.
+	 */
+	JDK {
+		@Override
+		public Random create(long seed) {
+			return new Random(seed);
+		}
+
+		@Override
+		public Random split(Random streams) {
+			return new Random(streams.nextLong());
+		}
+	};
+
+	/**
+	 * @return new generator of the seed, only to take substreams from
+	 */
+	public abstract Random create(long seed);
+
+	/**
+	 * @param streams generator created by {@link #create(long)} of this type, it moves to the next substream
+	 * @return new generator of the next substream
+	 */
+	public abstract Random split(Random streams);
+}
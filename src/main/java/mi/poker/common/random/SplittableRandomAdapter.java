@@ -0,0 +1,62 @@
+package mi.poker.common.random;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+
+/**
+ * @author m1
+ * {@link SplittableRandom} as a {@link Random}, so it can be passed wherever one is expected.
+ * Not thread-safe, every thread needs its own generator, see {@link #split()}.
+ */
+public final class SplittableRandomAdapter extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	private SplittableRandom random; // set by setSeed, which Random's constructor calls
+
+	public SplittableRandomAdapter(long seed) {
+		super(seed);
+	}
+
+	private SplittableRandomAdapter(SplittableRandom random) {
+		super(0);
+		this.random = random;
+	}
+
+	@Override
+	public void setSeed(long seed) {
+		random = new SplittableRandom(seed);
+	}
+
+	@Override
+	public long nextLong() {
+		return random.nextLong();
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (random.nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public int nextInt() {
+		return random.nextInt();
+	}
+
+	@Override
+	public int nextInt(int bound) {
+		return random.nextInt(bound);
+	}
+
+	@Override
+	public double nextDouble() {
+		return random.nextDouble();
+	}
+
+	/**
+	 * @return new generator of a stream independent of this one, both change only by their own numbers
+	 */
+	public SplittableRandomAdapter split() {
+		return new SplittableRandomAdapter(random.split());
+	}
+}
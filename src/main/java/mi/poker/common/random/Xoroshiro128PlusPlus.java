@@ -0,0 +1,120 @@
+package mi.poker.common.random;
+
+import java.util.Random;
+
+/**
+ * @author m1
+ * xoroshiro128++ generator of Blackman and Vigna: 128 bits of state, period 2^128 - 1, a few shifts, rotations
+ * and additions per number, no locking. Being a {@link Random} it can be passed wherever one is expected.
+ * Not thread-safe, every thread needs its own generator.
+ * <p>
+ * {@link #split()} returns a copy and jumps this generator 2^64 numbers ahead, substreams taken one after the
+ * other never overlap.
+ */
+public final class Xoroshiro128PlusPlus extends Random {
+
+	private static final long serialVersionUID = 1L;
+
+	// polynomial of the 2^64 jump
+	private static final long[] JUMP = {0x2bd7a6a6e99c2ddcL, 0x0992ccaf6a6fca05L};
+
+	private long s0;
+	private long s1;
+
+	public Xoroshiro128PlusPlus(long seed) {
+		super(seed); // calls setSeed
+	}
+
+	private Xoroshiro128PlusPlus(long s0, long s1) {
+		super(0);
+		this.s0 = s0;
+		this.s1 = s1;
+	}
+
+	/**
+	 * The seed is spread over the state by splitmix64, which never gives an all zero state
+	 */
+	@Override
+	public void setSeed(long seed) {
+		s0 = splitMix(seed);
+		s1 = splitMix(seed + 0x9e3779b97f4a7c15L);
+	}
+
+	@Override
+	public long nextLong() {
+		long s0 = this.s0;
+		long s1 = this.s1;
+		long result = Long.rotateLeft(s0 + s1, 17) + s0;
+		s1 ^= s0;
+		this.s0 = Long.rotateLeft(s0, 49) ^ s1 ^ (s1 << 21);
+		this.s1 = Long.rotateLeft(s1, 28);
+		return result;
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public int nextInt() {
+		return (int) (nextLong() >>> 32);
+	}
+
+	/**
+	 * Lemire's multiply and shift, a division only for the rare rejected numbers
+	 */
+	@Override
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("bound must be positive: " + bound);
+		}
+		long m = (nextLong() >>> 32) * bound;
+		if ((m & 0xFFFFFFFFL) < bound) {
+			long threshold = (0x100000000L - bound) % bound; // 2^32 mod bound
+			while ((m & 0xFFFFFFFFL) < threshold) {
+				m = (nextLong() >>> 32) * bound;
+			}
+		}
+		return (int) (m >>> 32);
+	}
+
+	@Override
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * Moves the generator 2^64 numbers ahead
+	 */
+	public void jump() {
+		long t0 = 0;
+		long t1 = 0;
+		for (long jump : JUMP) {
+			for (int b = 0;b<64;b++){
+				if ((jump & 1L << b) != 0) {
+					t0 ^= s0;
+					t1 ^= s1;
+				}
+				nextLong();
+			}
+		}
+		s0 = t0;
+		s1 = t1;
+	}
+
+	/**
+	 * @return generator of the next 2^64 numbers of this one, which jumps past them
+	 */
+	public Xoroshiro128PlusPlus split() {
+		Xoroshiro128PlusPlus substream = new Xoroshiro128PlusPlus(s0, s1);
+		jump();
+		return substream;
+	}
+
+	private static long splitMix(long z) {
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
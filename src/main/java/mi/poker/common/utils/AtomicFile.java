@@ -0,0 +1,79 @@
+package mi.poker.common.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * @author m1
+ * Replaces a file atomically: the content goes to a new temporary file next to the target,
+ * which is then moved over the target.
+ * <p>
+ * The temporary file is opened with default attributes, unlike {@link Files#createTempFile} it is not
+ * private to the owner, so the result gets the usual umask based permissions and tables written here
+ * can be mapped by JVMs of other users.
+ */
+public final class AtomicFile {
+
+	/**
+	 * Content of the new file
+	 */
+	public interface Content {
+		/**
+		 * @param channel empty file open for writing, forced and closed by the caller
+		 */
+		void writeTo(FileChannel channel) throws IOException;
+	}
+
+	private AtomicFile() {}
+
+	/**
+	 * Concurrent readers never see a half written file and concurrent writers never share a temporary file.
+	 * On failure the temporary file is removed and the target is left as it was.
+	 * @throws java.nio.file.AtomicMoveNotSupportedException if the file system can not replace the file atomically
+	 */
+	public static void write(File file, Content content) throws IOException {
+		Path target = file.getAbsoluteFile().toPath();
+		Path tmp;
+		FileChannel channel;
+		while (true) {
+			tmp = target.resolveSibling(target.getFileName() + "." + Long.toHexString(ThreadLocalRandom.current().nextLong()) + ".tmp");
+			try {
+				channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+				break;
+			} catch (FileAlreadyExistsException e) {
+				// name of another writer's file, try another one
+			}
+		}
+		try {
+			try {
+				content.writeTo(channel);
+				channel.force(true);
+			} finally {
+				channel.close();
+			}
+			Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			deleteQuietly(tmp, e);
+			throw e;
+		} catch (RuntimeException e) {
+			deleteQuietly(tmp, e);
+			throw e;
+		}
+	}
+
+	// removes the temporary file of a failed write, a failure to remove it is added to the write's exception
+	private static void deleteQuietly(Path tmp, Exception cause) {
+		try {
+			Files.deleteIfExists(tmp);
+		} catch (IOException e) {
+			cause.addSuppressed(e);
+		}
+	}
+}
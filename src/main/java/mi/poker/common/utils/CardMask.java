@@ -0,0 +1,137 @@
+package mi.poker.common.utils;
+
+import mi.poker.common.model.testbed.klaatu.Card;
+import mi.poker.common.model.testbed.klaatu.CardSet;
+
+/**
+ * @author m1
+ * Set of cards stored in a primitive {@code long}, one bit per card.
+ * <p>
+ * Bit i is the card with {@link Card#index()} i ({@code suit*13 + rank}), which is exactly the
+ * {@link mi.poker.common.model.testbed.klaatu.HandEval#encode(Card)} format, so a mask can be passed
+ * to the HandEval methods as is. All operations are O(1) (or O(set bits) for iteration) and never allocate,
+ * set algebra is plain bitwise arithmetic: union {@code a | b}, intersection {@code a & b}, difference {@code a & ~b}.
+ */
+public final class CardMask {
+
+	public static final long EMPTY = 0L;
+	public static final long FULL_DECK = (1L << 52) - 1;
+
+	private CardMask() {}
+
+	/**
+	 * @param index card index 0..51
+	 * @return mask with only this card
+	 */
+	public static long bit(int index) {
+		return 1L << index;
+	}
+
+	public static long of(Card card) {
+		return 1L << card.index();
+	}
+
+	public static long of(Card... cards) {
+		long mask = 0;
+		for (Card c : cards) {
+			mask |= 1L << c.index();
+		}
+		return mask;
+	}
+
+	public static long of(CardSet cards) {
+		long mask = 0;
+		for (Card c : cards) {
+			mask |= 1L << c.index();
+		}
+		return mask;
+	}
+
+	public static boolean contains(long mask, int index) {
+		return (mask & (1L << index)) != 0;
+	}
+
+	public static boolean containsAll(long mask, long cards) {
+		return (mask & cards) == cards;
+	}
+
+	public static boolean intersects(long mask, long cards) {
+		return (mask & cards) != 0;
+	}
+
+	/**
+	 * @return number of cards in the mask
+	 */
+	public static int size(long mask) {
+		return Long.bitCount(mask);
+	}
+
+	/**
+	 * @return index of the lowest card, 64 if the mask is empty
+	 */
+	public static int first(long mask) {
+		return Long.numberOfTrailingZeros(mask);
+	}
+
+	/**
+	 * @return the mask without its lowest card, used to iterate:
+	 * {@code for (long m = mask; m != 0; m = CardMask.removeFirst(m)) { int card = CardMask.first(m); ... }}
+	 */
+	public static long removeFirst(long mask) {
+		return mask & (mask - 1);
+	}
+
+	/**
+	 * @param n position of the card in the mask, 0..size-1, counted from the lowest index
+	 * @return index of the n-th card of the mask
+	 */
+	public static int get(long mask, int n) {
+		// skip whole 16 bit blocks first, then single cards
+		int shift = 0;
+		int count;
+		while ((count = Long.bitCount(mask & 0xFFFFL)) <= n) {
+			n -= count;
+			mask >>>= 16;
+			shift += 16;
+		}
+		for (int i = 0; i < n; i++) {
+			mask &= mask - 1;
+		}
+		return shift + Long.numberOfTrailingZeros(mask);
+	}
+
+	/**
+	 * @return the same cards in {@link mi.poker.common.model.testbed.klaatu.HandEval#encode(CardSet)} format
+	 */
+	public static long toHandEval(long mask) {
+		return mask; // same layout
+	}
+
+	/**
+	 * @param cards receives the card indexes, from the lowest
+	 * @return number of cards written
+	 */
+	public static int toIndexes(long mask, int[] cards) {
+		int n = 0;
+		for (long m = mask; m != 0; m &= m - 1) {
+			cards[n++] = Long.numberOfTrailingZeros(m);
+		}
+		return n;
+	}
+
+	public static CardSet toCardSet(long mask) {
+		CardSet result = new CardSet(size(mask));
+		for (long m = mask; m != 0; m &= m - 1) {
+			result.add(Card.getInstance(Long.numberOfTrailingZeros(m)));
+		}
+		return result;
+	}
+
+	public static String toString(long mask) {
+		StringBuilder builder = new StringBuilder();
+		for (long m = mask; m != 0; m &= m - 1) {
+			builder.append(Card.getInstance(Long.numberOfTrailingZeros(m)));
+		}
+		return builder.toString();
+	}
+}
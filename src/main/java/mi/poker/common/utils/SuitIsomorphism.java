@@ -0,0 +1,133 @@
+package mi.poker.common.utils;
+
+import java.util.Arrays;
+
+/**
+ * @author m1
+ * Suit permutations of {@link CardMask}s.
+ * <p>
+ * Hand values do not depend on suit names, so two deals that differ only by a permutation of suits
+ * have the same outcome. A group of permutations is an {@code int[]} of permutation numbers
+ * 0..23, {@link #ALL} is the full group; {@link #stabilizer(int[], long)} narrows a group to the
+ * permutations that keep some cards in place. A mask is canonical in a group if no permutation of the group
+ * maps it to a smaller mask, every orbit has exactly one canonical mask.
+ */
+public final class SuitIsomorphism {
+
+	/**
+	 * All 24 permutations of the 4 suits
+	 */
+	public static final int[] ALL;
+	/**
+	 * Group with only the identity permutation
+	 */
+	public static final int[] IDENTITY = {0};
+
+	// PERMUTATIONS[p][s] - suit s goes to suit PERMUTATIONS[p][s], permutation 0 is identity
+	private static final int[][] PERMUTATIONS = new int[24][];
+	private static final long SUIT = (1L << 13) - 1;
+
+	static {
+		int n = 0;
+		for (int a = 0;a<4;a++){
+			for (int b = 0;b<4;b++){
+				for (int c = 0;c<4;c++){
+					int d = 6 - a - b - c;
+					if (a != b && a != c && b != c && d != a && d != b && d != c) {
+						PERMUTATIONS[n++] = new int[] {a, b, c, d};
+					}
+				}
+			}
+		}
+		ALL = new int[24];
+		for (int i = 0;i<24;i++){
+			ALL[i] = i;
+		}
+	}
+
+	private SuitIsomorphism() {}
+
+	/**
+	 * @param permutation permutation number 0..23
+	 * @return cards with suits permuted
+	 */
+	public static long permute(long mask, int permutation) {
+		int[] p = PERMUTATIONS[permutation];
+		return (mask & SUIT) << 13 * p[0]
+			| (mask >>> 13 & SUIT) << 13 * p[1]
+			| (mask >>> 26 & SUIT) << 13 * p[2]
+			| (mask >>> 39 & SUIT) << 13 * p[3];
+	}
+
+	/**
+	 * @param card card index 0..51
+	 * @param permutation permutation number 0..23
+	 * @return index of the card with permuted suit
+	 */
+	public static int permuteCard(int card, int permutation) {
+		return PERMUTATIONS[permutation][card / 13] * 13 + card % 13;
+	}
+
+	/**
+	 * @return permutations of the group that map the cards to themselves
+	 */
+	public static int[] stabilizer(int[] group, long mask) {
+		int[] result = new int[group.length];
+		int n = 0;
+		for (int p : group) {
+			if (permute(mask, p) == mask) {
+				result[n++] = p;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * @param hands set of hands, e.g. a range
+	 * @return permutations of the group that map the set of hands to itself
+	 */
+	public static int[] stabilizer(int[] group, long[] hands) {
+		long[] sorted = hands.clone();
+		Arrays.sort(sorted);
+		int[] result = new int[group.length];
+		int n = 0;
+		for (int p : group) {
+			boolean keeps = true;
+			for (int i = 0;i<sorted.length && keeps;i++){
+				keeps = Arrays.binarySearch(sorted, permute(sorted[i], p)) >= 0;
+			}
+			if (keeps) {
+				result[n++] = p;
+			}
+		}
+		return Arrays.copyOf(result, n);
+	}
+
+	/**
+	 * @return number of different masks the group maps the cards to, 0 if the cards are not canonical
+	 */
+	public static int orbitSize(int[] group, long mask) {
+		int stabilizer = 0;
+		for (int p : group) {
+			long image = permute(mask, p);
+			if (image < mask) {
+				return 0;
+			}
+			if (image == mask) {
+				stabilizer++;
+			}
+		}
+		return group.length / stabilizer;
+	}
+
+	/**
+	 * @return the smallest mask the group maps the cards to
+	 */
+	public static long canonical(int[] group, long mask) {
+		long result = mask;
+		for (int p : group) {
+			result = Math.min(result, permute(mask, p));
+		}
+		return result;
+	}
+}
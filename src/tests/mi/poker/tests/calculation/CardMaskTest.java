@@ -0,0 +1,44 @@
+package mi.poker.tests.calculation;
+
+import org.junit.Test;
+
+import mi.poker.calculation.HandParser;
+import mi.poker.common.model.testbed.klaatu.CardSet;
+import mi.poker.common.model.testbed.klaatu.HandEval;
+import mi.poker.common.utils.CardMask;
+import mi.poker.tests.BaseTest;
+
+public class CardMaskTest extends BaseTest {
+
+	@Test
+	public void testCardSetRoundTrip(){
+		CardSet cards = CardSet.freshDeck();
+		long mask = CardMask.of(cards);
+		assertEquals(CardMask.FULL_DECK, mask);
+		assertEquals(52, CardMask.size(mask));
+		assertEquals(HandEval.encode(cards), CardMask.toHandEval(mask));
+		assertEquals(52, CardMask.toCardSet(mask).size());
+	}
+
+	@Test
+	public void testGet(){
+		long mask = HandParser.parseCardMask("2c5dAhKs");
+		int[] cards = new int[4];
+		assertEquals(4, CardMask.toIndexes(mask, cards));
+		for (int i = 0;i<cards.length;i++){
+			assertEquals(cards[i], CardMask.get(mask, i));
+		}
+		for (int i = 0;i<52;i++){
+			assertEquals(i, CardMask.get(CardMask.FULL_DECK, i));
+		}
+	}
+
+	@Test
+	public void testParse(){
+		long[][] hands = HandParser.parsePlayersHandMasks("AA,KsQs");
+		assertEquals(6, hands[0].length);
+		assertEquals(1, hands[1].length);
+		assertEquals(HandParser.parseCardMask("KsQs"), hands[1][0]);
+		assertEquals("2c5d", CardMask.toString(HandParser.parseCardMask("5d 2c")));
+	}
+}
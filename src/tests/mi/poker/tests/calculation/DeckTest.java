@@ -0,0 +1,74 @@
+package mi.poker.tests.calculation;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import mi.poker.calculation.Deck;
+import mi.poker.calculation.HandParser;
+import mi.poker.common.utils.CardMask;
+import mi.poker.tests.BaseTest;
+
+public class DeckTest extends BaseTest {
+
+	@Test
+	public void testDealsEveryCardOnce(){
+		long cards = CardMask.FULL_DECK & ~HandParser.parseCardMask("AcKdQh");
+		Deck deck = new Deck(cards);
+		Random random = new Random(1);
+		for (int round = 0;round<3;round++){
+			deck.reset();
+			long dealt = 0;
+			while (deck.size() > 0) {
+				long card = CardMask.bit(deck.deal(random));
+				assertTrue(CardMask.containsAll(cards, card));
+				assertEquals(0, dealt & card);
+				dealt |= card;
+			}
+			assertEquals(cards, dealt);
+		}
+	}
+
+	@Test
+	public void testUsedCards(){
+		long used = HandParser.parseCardMask("AsAh");
+		Deck deck = new Deck(CardMask.FULL_DECK);
+		Random random = new Random(1);
+		for (int i = 0;i<1000;i++){
+			deck.reset();
+			for (int j = 0;j<5;j++){
+				assertEquals(0, CardMask.bit(deck.deal(used, random)) & used);
+			}
+		}
+	}
+
+	@Test
+	public void testUniform(){
+		long cards = HandParser.parseCardMask("AcKcQcJc");
+		Deck deck = new Deck(cards);
+		Random random = new Random(1);
+		int[] second = new int[52];
+		int deals = 100000;
+		for (int i = 0;i<deals;i++){
+			deck.reset(); // the order left by the previous deal does not matter
+			deck.deal(random);
+			second[deck.deal(random)]++;
+		}
+		for (int card = 0;card<52;card++){
+			assertEquals(CardMask.containsAll(cards, CardMask.bit(card)) ? 0.25 : 0, (double) second[card] / deals, 0.01);
+		}
+	}
+
+	@Test
+	public void testEmpty(){
+		Deck deck = new Deck(HandParser.parseCardMask("2c"));
+		Random random = new Random(1);
+		deck.deal(random);
+		try {
+			deck.deal(random);
+			fail("Dealt from an empty deck");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,44 @@
+package mi.poker.tests.calculation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import mi.poker.calculation.EquityCalculation;
+import mi.poker.calculation.EquityQuery;
+import mi.poker.calculation.ExhaustiveEnumeration;
+import mi.poker.calculation.Result;
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.tests.BaseTest;
+
+public class EquityBatchTest extends BaseTest {
+
+	@Test
+	public void testSameAsExhaustive(){
+		List<EquityQuery> queries = new ArrayList<EquityQuery>();
+		String[] heroes = {"AhKh", "QsQd", "7c6c", "AdAs", "5s5c"};
+		for (String hero : heroes) {
+			queries.add(EquityQuery.compile(hero + ",TT+|AQs+|AKo", "Kc7d2h", ""));
+			queries.add(EquityQuery.compile(hero + ",TT+|AQs+,JJ", "Kc7d2h3s", ""));
+		}
+		List<Result> results = EquityCalculation.calculate(queries);
+		assertEquals(queries.size(), results.size());
+		for (int i = 0;i<queries.size();i++){
+			Result expected = queries.get(i).calculate(new ExhaustiveEnumeration(EvaluatorType.HAND_EVAL));
+			assertEquals(expected.toString(), results.get(i).toString());
+			assertTrue(results.get(i).getPlan().startsWith("batch enumeration: 5 queries"));
+		}
+	}
+
+	@Test
+	public void testPlannedSeparately(){
+		List<EquityQuery> queries = new ArrayList<EquityQuery>();
+		queries.add(EquityQuery.compile("JcJh,8s7s", "4dAc5d", ""));
+		queries.add(EquityQuery.compile("XxXx,XxXx,XxXx", "Kc7d2h", ""));
+		List<Result> results = EquityCalculation.calculate(queries);
+		assertEquals(80.505, results.get(0).getHandInfo(0).getEquity() * 100, 0.001);
+		assertTrue(results.get(0).getPlan().startsWith("exhaustive enumeration"));
+		assertTrue(results.get(1).getPlan().startsWith("monte carlo"));
+	}
+}
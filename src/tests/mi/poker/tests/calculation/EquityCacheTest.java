@@ -0,0 +1,43 @@
+package mi.poker.tests.calculation;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import mi.poker.calculation.EquityCache;
+import mi.poker.calculation.Result;
+import mi.poker.tests.BaseTest;
+
+public class EquityCacheTest extends BaseTest {
+
+	@Test
+	public void testSuitPermutedAndReordered(){
+		EquityCache cache = new EquityCache(10);
+		Result first = cache.calculate("AcAh,7d2d", "Kh7s3c", "");
+		// hearts -> clubs, spades -> diamonds, clubs -> spades, diamonds -> hearts, players swapped
+		Result second = cache.calculate("7h2h,AsAc", "Kc7d3s", "");
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals("7h2h", second.getHandInfo(0).getHand());
+		assertEquals(first.getHandInfo(0).getEquity(), second.getHandInfo(1).getEquity(), 0);
+		assertEquals(first.getHandInfo(1).getEquity(), second.getHandInfo(0).getEquity(), 0);
+	}
+
+	@Test
+	public void testEviction() throws InterruptedException{
+		EquityCache cache = new EquityCache(1);
+		cache.calculate("AcAh,7d2d", "Kh7s3c", "");
+		cache.calculate("JcJh,8s7s", "4dAc5d", "");
+		cache.calculate("AcAh,7d2d", "Kh7s3c", "");
+		assertEquals(3, cache.getMisses());
+		assertEquals(2, cache.getEvictions());
+		assertEquals(1, cache.size());
+		
+		cache = new EquityCache(10, 10, TimeUnit.MILLISECONDS, null);
+		cache.calculate("AcAh,7d2d", "Kh7s3c", "");
+		Thread.sleep(50);
+		cache.calculate("AcAh,7d2d", "Kh7s3c", "");
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.getEvictions());
+	}
+}
@@ -1,11 +1,34 @@
 package mi.poker.tests.calculation;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
 import org.junit.Test;
 
 import junit.framework.TestCase;
+import mi.poker.calculation.CalculationPlan;
+import mi.poker.calculation.CalculationPlanner;
+import mi.poker.calculation.CancellationToken;
 import mi.poker.calculation.EquityCalculation;
+import mi.poker.calculation.EquityQuery;
+import mi.poker.calculation.ExhaustiveEnumeration;
 import mi.poker.calculation.HandInfo;
+import mi.poker.calculation.HandParser;
+import mi.poker.calculation.MonteCarloSimulation;
+import mi.poker.calculation.Range;
+import mi.poker.calculation.RangeEnumeration;
 import mi.poker.calculation.Result;
+import mi.poker.calculation.ResultListener;
+import mi.poker.calculation.StoppingRule;
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.common.random.RandomType;
+import mi.poker.common.utils.CardMask;
 
 public class EquityCalculationTest extends TestCase {
 
@@ -185,6 +208,266 @@ public class EquityCalculationTest extends TestCase {
 		IN_RANGE_NUMBER = exInRange;
 	}
 	
+	@Test
+	public void testParallelMonteCarlo(){
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			Result result = EquityCalculation.calculateMonteCarlo("JcJh,8s7s", 
+					"4dAc5d", "", EvaluatorType.STATE_TABLE, executor, 4);
+			HandInfo p1 = result.getHandInfo(0);
+			HandInfo p2 = result.getHandInfo(1);
+			assertEquals(1000000, p1.getTotalGames());
+			assertEquals(1000000, p2.getTotalGames());
+			//player1
+			assertTrue(almostEqualPercent(p1.getEquity(),80.5d));
+			assertTrue(almostEqualPercent(p1.getWin(), 79.7));
+			//player 2
+			assertTrue(almostEqualPercent(p2.getEquity(),19.4));
+			assertTrue(almostEqualPercent(p2.getWin(),18.7));
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testParallelExhaustiveEnumeration(){
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			String[][] cases = {{"AcAh,7d2d", ""}, {"QQ+,AKs,76s", "2c7h9d"}, {"KK,AKo,9s8s,3h3s", "4h8hQc"}};
+			for (String[] c : cases) {
+				Result serial = EquityCalculation.calculateExhaustiveEnumration(c[0], c[1], "", EvaluatorType.HAND_EVAL);
+				Result parallel = EquityCalculation.calculateExhaustiveEnumration(c[0], c[1], "", EvaluatorType.HAND_EVAL, pool);
+				for (int i = 0;i<serial.getMap().size();i++){
+					HandInfo s = serial.getHandInfo(i);
+					HandInfo p = parallel.getHandInfo(i);
+					assertEquals(s.getTotalGames(), p.getTotalGames());
+					assertEquals(s.getPotsWon(), p.getPotsWon());
+					assertEquals(s.getPotsTied(), p.getPotsTied());
+					assertEquals(Double.doubleToLongBits(s.getEquity()), Double.doubleToLongBits(p.getEquity()));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+	
+	@Test
+	public void testRangeEnumeration(){
+		String[][] cases = {{"JcJh,8s7s", "4dAc5d", ""}, {"QQ+|AKs,JJ|TT|99|88", "4dAc5d", ""},
+				{"XxXx,AA", "Kh7d2c", "3s"}, {"TT+|AKs,77|66|55|A5s", "Kh7d2c9s", ""}};
+		for (String[] c : cases) {
+			Result exhaustive = EquityCalculation.calculateExhaustiveEnumration(c[0], c[1], c[2], EvaluatorType.HAND_EVAL);
+			Result ranges = new RangeEnumeration(EvaluatorType.HAND_EVAL).calculate(c[0], c[1], c[2]);
+			for (int i = 0;i<2;i++){
+				HandInfo e = exhaustive.getHandInfo(i);
+				HandInfo r = ranges.getHandInfo(i);
+				assertEquals(e.getTotalGames(), r.getTotalGames());
+				assertEquals(e.getPotsWon(), r.getPotsWon());
+				assertEquals(e.getPotsTied(), r.getPotsTied());
+				assertEquals(e.getEquity(), r.getEquity(), 1e-9);
+			}
+		}
+	}
+	
+	@Test
+	public void testIncrementalEnumeration(){
+		String[][] cases = {{"JcJh,8s7s", "4dAc5d", ""}, {"QQ+,AKs,76s", "2c7h9d", ""}, {"KK,AKo,9s8s,3h3s", "4h8hQc", "2s"},
+				{"AhKh,QsQd", "Th", ""}, {"Ac5d,KhKs", "2c3c4h5h6s", ""}};
+		for (String[] c : cases) {
+			Result expected = EquityCalculation.calculateExhaustiveEnumration(c[0], c[1], c[2], EvaluatorType.HAND_EVAL);
+			ExhaustiveEnumeration enumeration = new ExhaustiveEnumeration();
+			enumeration.setIncremental(true);
+			Result result = enumeration.calculate(c[0], c[1], c[2]);
+			assertEquals(expected.toString(), result.toString());
+		}
+	}
+	
+	@Test
+	public void testSplitPots(){
+		Result result = EquityCalculation.calculateExhaustiveEnumration("AhAd,KhKd,QhQd", "AsKsQsJsTs", "");
+		for (int i = 0;i<3;i++){
+			HandInfo handInfo = result.getHandInfo(i);
+			assertEquals(1, handInfo.getTotalGames());
+			assertEquals(1, handInfo.getSplitPots(3));
+			assertEquals(0, handInfo.getSplitPots(2));
+			assertEquals(1d / 3, handInfo.getEquity(), 1e-15);
+		}
+	}
+	
+	@Test
+	public void testPlanner(){
+		CalculationPlanner planner = new CalculationPlanner();
+		Range[] ranges = Range.parsePlayers("KK,AKo,9s8s,3h3s");
+		long board = HandParser.parseCardMask("4h8hQc");
+		CalculationPlan plan = planner.plan(ranges, board, HandParser.parseCardMask("2c3c3d"), null);
+		assertTrue(plan.getCalculation() instanceof ExhaustiveEnumeration);
+		assertTrue(plan.getDescription().startsWith("exhaustive enumeration: 36 hand assignments x 703 boards"));
+		
+		plan = planner.plan(Range.parsePlayers("XxXx,XxXx"), board, CardMask.EMPTY, null);
+		assertTrue(plan.getCalculation() instanceof RangeEnumeration);
+		
+		planner.setBudget(1, TimeUnit.MICROSECONDS);
+		plan = planner.plan(ranges, board, CardMask.EMPTY, null);
+		assertTrue(plan.getCalculation() instanceof MonteCarloSimulation);
+		
+		Result result = EquityCalculation.calculate("JcJh,8s7s", "4dAc5d", "");
+		assertTrue(result.getPlan().startsWith("exhaustive enumeration"));
+	}
+	
+	@Test
+	public void testWeightedRanges(){
+		CalculationPlanner planner = new CalculationPlanner();
+		// exhaustive enumeration, preflop, range enumeration
+		String[][] cases = {{"JcJh,KdKs|8s7s", "4dAc5d"}, {"JcJh,KdKs|8s7s", ""}, {"AKs|QQ,JJ|TT", "4dAc5d"}};
+		for (String[] c : cases) {
+			Range[] ranges = Range.parsePlayers(c[0]);
+			long board = HandParser.parseCardMask(c[1]);
+			assertFalse(planner.plan(ranges, board, CardMask.EMPTY, null).getCalculation() instanceof MonteCarloSimulation);
+			ranges[1] = ranges[1].withWeight(ranges[1].combos()[0], 3);
+			CalculationPlan plan = planner.plan(ranges, board, CardMask.EMPTY, null);
+			assertTrue(plan.getCalculation() instanceof MonteCarloSimulation);
+			assertTrue(plan.getDescription().startsWith("monte carlo: weighted ranges"));
+		}
+		
+		// no hand of the weighted range shares a card with the first player, equities mix by the weights
+		Range[] ranges = Range.parsePlayers("JcJh,KdKs|8s7s");
+		ranges[1] = ranges[1].withWeight(Range.comboIndex(HandParser.parseCardMask("KdKs")), 3);
+		Result weighted = EquityCalculation.calculate(ranges, HandParser.parseCardMask("4dAc5d"), CardMask.EMPTY, (EvaluatorType) null);
+		double vsKings = EquityCalculation.calculate("JcJh,KdKs", "4dAc5d", "").getHandInfo(0).getEquity();
+		double vsConnectors = EquityCalculation.calculate("JcJh,8s7s", "4dAc5d", "").getHandInfo(0).getEquity();
+		assertEquals((3 * vsKings + vsConnectors) / 4, weighted.getHandInfo(0).getEquity(), 0.005);
+	}
+	
+	@Test
+	public void testDeadline() throws Exception{
+		EquityQuery query = EquityQuery.compile("XxXx,XxXx,XxXx,XxXx", "", "");
+		Result result = EquityCalculation.calculateAsync(query, 100, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+		assertTrue(result.getPlan().startsWith("monte carlo"));
+		assertTrue(result.getHandInfo(0).getTotalGames() > 0);
+		assertTrue(result.getHandInfo(0).getStandardError() < 1);
+		
+		result = EquityCalculation.calculateAsync(EquityQuery.compile("JcJh,8s7s", "4dAc5d", ""), 1, TimeUnit.SECONDS).get();
+		assertEquals(990, result.getHandInfo(0).getTotalGames());
+		
+		ExhaustiveEnumeration enumeration = new ExhaustiveEnumeration();
+		enumeration.setCancellationToken(CancellationToken.withTimeout(0, TimeUnit.MILLISECONDS));
+		try {
+			query.calculate(enumeration);
+			fail("Enumerated past the deadline");
+		} catch (CancellationException e) {
+			// expected
+		}
+		
+		CancellationToken token = new CancellationToken();
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			CompletableFuture<Result> future = EquityCalculation.calculateAsync(query, token, executor);
+			future.cancel(true);
+			assertTrue(token.isCancelled());
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testStoppingRule(){
+		Result result = EquityCalculation.calculateMonteCarlo("AcAh,7d2d", "", "",
+				StoppingRule.DEFAULT.withStandardError(0.002));
+		HandInfo p1 = result.getHandInfo(0);
+		assertTrue(p1.getTotalGames() < 1000000);
+		assertTrue(p1.getStandardError() <= 0.002);
+		assertTrue(p1.getEquityLow() < p1.getEquity() && p1.getEquity() < p1.getEquityHigh());
+		assertTrue(p1.getEquityLow() < 0.8329 && 0.8329 < p1.getEquityHigh());
+		
+		result = EquityCalculation.calculateMonteCarlo("AcAh,7d2d", "", "",
+				StoppingRule.DEFAULT.withMaxTrials(12345));
+		assertEquals(12345, result.getHandInfo(0).getTotalGames());
+		
+		result = EquityCalculation.calculateMonteCarlo("AcAh,7d2d", "", "",
+				StoppingRule.DEFAULT.withTimeBudget(50, TimeUnit.MILLISECONDS));
+		assertTrue(result.getHandInfo(0).getTotalGames() < 1000000);
+	}
+	
+	@Test
+	public void testSeed(){
+		ExecutorService executor = Executors.newFixedThreadPool(3);
+		try {
+			Result expected = null;
+			for (int parallelism = 1;parallelism<=3;parallelism++){
+				MonteCarloSimulation simulation = new MonteCarloSimulation(EvaluatorType.STATE_TABLE, executor, parallelism);
+				simulation.setRandomType(RandomType.XOROSHIRO);
+				simulation.setSeed(7L);
+				simulation.setTrials(12345);
+				Result result = simulation.calculate("AcAh,QQ+|AKs,XxXx", "", "");
+				assertEquals(Long.valueOf(7), result.getSeed());
+				if (expected == null) {
+					expected = result;
+				}
+				// same trials at any parallelism
+				for (int i = 0;i<result.size();i++){
+					assertEquals(expected.getHandInfo(i).getPotsWon(), result.getHandInfo(i).getPotsWon());
+					assertEquals(expected.getHandInfo(i).getPotsTied(), result.getHandInfo(i).getPotsTied());
+				}
+			}
+			MonteCarloSimulation simulation = new MonteCarloSimulation();
+			simulation.setTrials(10000);
+			Result result = simulation.calculate("AcAh,QQ+|AKs,XxXx", "", "");
+			assertNotNull(result.getSeed());
+			simulation.setSeed(result.getSeed());
+			assertEquals(result.getHandInfo(0).getPotsWon(), simulation.calculate("AcAh,QQ+|AKs,XxXx", "", "").getHandInfo(0).getPotsWon());
+			assertNull(EquityCalculation.calculateExhaustiveEnumration("AcAh,7d2d", "", "", EvaluatorType.HAND_EVAL).getSeed());
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testResultListener(){
+		final List<Result> snapshots = new ArrayList<Result>();
+		final List<Boolean> done = new ArrayList<Boolean>();
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			MonteCarloSimulation simulation = new MonteCarloSimulation(EvaluatorType.STATE_TABLE, executor, 2);
+			simulation.setTrials(100000);
+			// rounds are 10000 trials, every round is published
+			simulation.setResultListener(new ResultListener() {
+				public void resultUpdated(Result snapshot, boolean last) {
+					snapshots.add(snapshot);
+					done.add(last);
+				}
+			}, 1, 1, TimeUnit.HOURS);
+			Result result = simulation.calculate("JcJh,8s7s", "4dAc5d", "");
+			assertEquals(10, snapshots.size());
+			for (int i = 0;i<snapshots.size();i++){
+				assertEquals((i + 1) * 10000, snapshots.get(i).getHandInfo(0).getTotalGames());
+				assertEquals(i == snapshots.size() - 1, done.get(i).booleanValue());
+				assertTrue(snapshots.get(i).getHandInfo(1).getStandardError() > 0);
+			}
+			Result last = snapshots.get(snapshots.size() - 1);
+			assertNotSame(result, last);
+			assertEquals(result.getHandInfo(0).getPotsWon(), last.getHandInfo(0).getPotsWon());
+			assertEquals(result.getHandInfo(1).getEquity(), last.getHandInfo(1).getEquity(), 0);
+			// the first snapshot is not changed by the later rounds
+			assertEquals(10000, snapshots.get(0).getHandInfo(1).getTotalGames());
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testResultMap(){
+		Result result = EquityCalculation.calculate("JcJh,8s7s", "4dAc5d", "");
+		assertEquals(2, result.getMap().size());
+		assertSame(result.getHandInfo(1), result.getMap().get(1));
+		try {
+			result.getMap().remove(0);
+			fail("read-only map expected");
+		} catch (UnsupportedOperationException e) {
+			// expected
+		}
+		assertEquals(2, result.size());
+	}
+	
 	private boolean almostEqual(double number, double number2){
 		return number > number2 - IN_RANGE_NUMBER && number < number2 + IN_RANGE_NUMBER;
 	}
@@ -2,9 +2,13 @@ package mi.poker.tests.calculation;
 
 import org.junit.Test;
 import mi.poker.calculation.CardUtil;
+import mi.poker.calculation.EquityQuery;
+import mi.poker.calculation.HandParseException;
 import mi.poker.calculation.HandParser;
+import mi.poker.calculation.Range;
 import mi.poker.common.model.testbed.klaatu.Card;
 import mi.poker.common.model.testbed.klaatu.CardSet;
+import mi.poker.common.utils.CardMask;
 import mi.poker.tests.BaseTest;
 
 public class HandParserTest extends BaseTest {
@@ -65,4 +69,50 @@ public class HandParserTest extends BaseTest {
 		assertEquals(parsedCards[5].suitOf().toChar(), 'd');
 	}
 
+	@Test
+	public void testParseRange() {
+		String[] ranges = {"JcJh", "99+|AJs+", "AK|KQo|T9s", "A K s | 2 2", "XxXx", "KAs+", "AAo"};
+		for (String range : ranges) {
+			CardSet[] hands = HandParser.parsePossibleHands(range);
+			Range parsed = Range.parse(range);
+			assertEquals(hands.length, parsed.size());
+			for (CardSet hand : hands) {
+				assertTrue(parsed.contains(Range.comboIndex(CardMask.of(hand))));
+			}
+		}
+		assertParseError("JcJh,8s7x", 5);
+		assertParseError("AKx", 2);
+		assertParseError("AhAh", 2);
+		assertParseError("QQ|Z9s", 3);
+	}
+	
+	@Test
+	public void testCompileQuery() {
+		EquityQuery query = EquityQuery.compile("JcJh, 99+|AJs+", "4dAc5d", "2s");
+		assertEquals(2, query.size());
+		assertEquals(Range.parse("JcJh"), query.getRange(0));
+		assertEquals(Range.parse("99+|AJs+"), query.getRange(1));
+		assertEquals("99+|AJs+", query.getRange(1).toString());
+		assertEquals(HandParser.parseCardMask("Ac4d5d"), query.getBoardCards());
+		assertEquals(HandParser.parseCardMask("2s"), query.getDeadCards());
+		
+		assertParseError("JcJh,8s7s", "4dAc5dKd2c3c", "", 10);
+		assertParseError("JcJh,8s7s", "4dAc5d", "7cAc", 2);
+		assertParseError("JcJh,8s7s", "4dAc5d5d", "", 6);
+		assertParseError("JcJh,,8s7s", "", "", 5);
+		assertParseError("JcJh,Jc8s", "Jh", "", 0);
+	}
+	
+	private void assertParseError(String players, int position) {
+		assertParseError(players, "", "", position);
+	}
+	
+	private void assertParseError(String players, String board, String dead, int position) {
+		try {
+			EquityQuery.compile(players, board, dead);
+			fail("Parsed " + players + " " + board + " " + dead);
+		} catch (HandParseException e) {
+			assertEquals(position, e.getPosition());
+		}
+	}
 }
@@ -0,0 +1,57 @@
+package mi.poker.tests.calculation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import mi.poker.calculation.ExhaustiveEnumeration;
+import mi.poker.calculation.HandInfo;
+import mi.poker.calculation.PreflopEquityGenerator;
+import mi.poker.calculation.PreflopEquityTable;
+import mi.poker.calculation.Result;
+import mi.poker.tests.BaseTest;
+
+public class PreflopEquityTableTest extends BaseTest {
+
+	@Test
+	public void testIndexes(){
+		Set<Integer> hands = new HashSet<Integer>();
+		Set<Integer> classes = new HashSet<Integer>();
+		for (int a = 0;a<52;a++){
+			for (int b = a + 1;b<52;b++){
+				assertEquals(PreflopEquityTable.handIndex(a, b), PreflopEquityTable.handIndex(b, a));
+				hands.add(PreflopEquityTable.handIndex(a, b));
+				classes.add(PreflopEquityTable.classIndex(a, b));
+			}
+		}
+		assertEquals(PreflopEquityTable.HANDS, hands.size());
+		assertEquals(PreflopEquityTable.CLASSES, classes.size());
+	}
+
+	/**
+	 * Generates a table of only the matchups of the cases, the full table takes minutes
+	 */
+	@Test
+	public void testSameAsEnumeration() throws IOException{
+		String[] cases = {"AcAh,7d2d", "AsKs,QhQd", "AKs,QQ", "JJ+,AKo", "QQ|AhKh,AKs|QsQh"};
+		File file = File.createTempFile("preflopEquity", ".bin");
+		file.deleteOnExit();
+		new PreflopEquityGenerator().generate(file, cases);
+		PreflopEquityTable table = PreflopEquityTable.map(file);
+		for (String hands : cases) {
+			Result expected = new ExhaustiveEnumeration().calculate(hands, "", "");
+			Result result = table.calculate(hands);
+			for (int i = 0;i<2;i++){
+				HandInfo e = expected.getHandInfo(i);
+				HandInfo r = result.getHandInfo(i);
+				assertEquals(e.getTotalGames(), r.getTotalGames());
+				assertEquals(e.getPotsWon(), r.getPotsWon());
+				assertEquals(e.getPotsTied(), r.getPotsTied());
+				assertEquals(e.getEquity(), r.getEquity());
+			}
+		}
+	}
+}
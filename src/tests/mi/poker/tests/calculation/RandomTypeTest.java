@@ -0,0 +1,60 @@
+package mi.poker.tests.calculation;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import mi.poker.common.random.RandomType;
+import mi.poker.common.random.Xoroshiro128PlusPlus;
+import mi.poker.tests.BaseTest;
+
+public class RandomTypeTest extends BaseTest {
+
+	@Test
+	public void testSubstreams(){
+		for (RandomType type : RandomType.values()) {
+			Random streams = type.create(42);
+			Random again = type.create(42);
+			Random first = type.split(streams);
+			Random second = type.split(streams);
+			assertEquals(type.toString(), type.split(again).nextLong(), first.nextLong());
+			assertEquals(type.toString(), type.split(again).nextLong(), second.nextLong());
+			assertTrue(type.toString(), first.nextLong() != second.nextLong());
+		}
+	}
+
+	@Test
+	public void testJump(){
+		Xoroshiro128PlusPlus random = new Xoroshiro128PlusPlus(1);
+		Xoroshiro128PlusPlus substream = random.split();
+		Xoroshiro128PlusPlus same = new Xoroshiro128PlusPlus(1);
+		for (int i = 0;i<100;i++){
+			assertEquals(same.nextLong(), substream.nextLong());
+		}
+		same = new Xoroshiro128PlusPlus(1);
+		same.jump();
+		assertEquals(same.nextLong(), random.nextLong());
+	}
+
+	@Test
+	public void testNextInt(){
+		for (RandomType type : RandomType.values()) {
+			Random random = type.split(type.create(1));
+			int[] counts = new int[52];
+			int draws = 520000;
+			for (int i = 0;i<draws;i++){
+				counts[random.nextInt(52)]++;
+			}
+			for (int count : counts) {
+				assertEquals(type.toString(), 1.0 / 52, (double) count / draws, 0.001);
+			}
+			double sum = 0;
+			for (int i = 0;i<draws;i++){
+				double d = random.nextDouble();
+				assertTrue(d >= 0 && d < 1);
+				sum += d;
+			}
+			assertEquals(type.toString(), 0.5, sum / draws, 0.005);
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package mi.poker.tests.calculation;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import mi.poker.calculation.HandParser;
+import mi.poker.calculation.Range;
+import mi.poker.calculation.RangeSampler;
+import mi.poker.common.utils.CardMask;
+import mi.poker.tests.BaseTest;
+
+public class RangeSamplerTest extends BaseTest {
+
+	@Test
+	public void testWeightedFrequencies(){
+		long aces = HandParser.parseCardMask("AcAd");
+		long kings = HandParser.parseCardMask("KcKd");
+		Range range = Range.of(aces, kings).withWeight(Range.comboIndex(kings), 3);
+		RangeSampler sampler = new RangeSampler(range);
+		Random random = new Random(1);
+		int kingsDrawn = 0;
+		int draws = 100000;
+		for (int i = 0;i<draws;i++){
+			if (sampler.sample(CardMask.FULL_DECK, random) == kings) {
+				kingsDrawn++;
+			}
+		}
+		assertEquals(0.75, (double) kingsDrawn / draws, 0.01);
+	}
+
+	@Test
+	public void testBlockedHands(){
+		Range range = Range.parse("AA").withWeight(Range.comboIndex(HandParser.parseCardMask("AcAd")), 100);
+		RangeSampler sampler = new RangeSampler(range);
+		long deck = CardMask.FULL_DECK & ~HandParser.parseCardMask("Ac");
+		Random random = new Random(1);
+		for (int i = 0;i<1000;i++){
+			long hand = sampler.sample(deck, random);
+			assertTrue(CardMask.containsAll(deck, hand));
+		}
+	}
+
+	@Test
+	public void testAnyTwoCards(){
+		RangeSampler sampler = new RangeSampler(Range.ALL);
+		long deck = CardMask.FULL_DECK & ~HandParser.parseCardMask("AcAdKh");
+		Random random = new Random(1);
+		for (int i = 0;i<1000;i++){
+			long hand = sampler.sample(deck, random);
+			assertEquals(2, CardMask.size(hand));
+			assertTrue(CardMask.containsAll(deck, hand));
+		}
+	}
+
+	@Test
+	public void testNoPossibleHand(){
+		try {
+			new RangeSampler(Range.parse("AcAd")).sample(CardMask.FULL_DECK & ~HandParser.parseCardMask("Ac"), new Random(1));
+			fail("Sampled a blocked hand");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package mi.poker.tests.calculation;
+
+import org.junit.Test;
+
+import mi.poker.calculation.HandParser;
+import mi.poker.calculation.Range;
+import mi.poker.common.utils.CardMask;
+import mi.poker.tests.BaseTest;
+
+public class RangeTest extends BaseTest {
+
+	@Test
+	public void testParse(){
+		assertEquals(6, Range.parse("AA").size());
+		assertEquals(22, Range.parse("QQ+").size()); // AA, KK, AKs, QQ
+		assertEquals(Range.COMBOS, Range.parse("XxXx").size());
+		assertSame(Range.parse("AKs"), Range.parse("AKs")); // cached
+		assertEquals("AKs", Range.parse("AKs").toString());
+	}
+
+	@Test
+	public void testComboIndex(){
+		for (int combo = 0;combo<Range.COMBOS;combo++){
+			long mask = Range.comboMask(combo);
+			assertEquals(2, CardMask.size(mask));
+			assertEquals(combo, Range.comboIndex(mask));
+		}
+	}
+
+	@Test
+	public void testSetOperations(){
+		Range aces = Range.parse("AA");
+		Range kings = Range.parse("KK");
+		Range both = aces.union(kings);
+		assertEquals(12, both.size());
+		assertEquals(aces, both.intersect(aces));
+		assertTrue(aces.intersect(kings).isEmpty());
+		
+		Range live = both.removeDead(HandParser.parseCardMask("AcKdKh"));
+		assertEquals(3 + 1, live.size());
+		assertSame(aces, aces.removeDead(HandParser.parseCardMask("2c")));
+	}
+
+	@Test
+	public void testWeights(){
+		int combo = Range.comboIndex(HandParser.parseCardMask("AcAd"));
+		Range aces = Range.parse("AA");
+		assertFalse(aces.isWeighted());
+		Range weighted = aces.withWeight(combo, 0.5f);
+		assertTrue(weighted.isWeighted());
+		assertEquals(0.5f, weighted.getWeight(combo));
+		assertEquals(1f, weighted.union(aces).getWeight(combo));
+		assertEquals(0.5f, weighted.intersect(aces).getWeight(combo));
+		assertEquals(5, aces.withWeight(combo, 0).size());
+		assertFalse(weighted.withWeight(combo, 1).isWeighted());
+	}
+}
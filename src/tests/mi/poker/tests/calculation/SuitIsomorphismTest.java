@@ -0,0 +1,60 @@
+package mi.poker.tests.calculation;
+
+import org.junit.Test;
+
+import mi.poker.calculation.ExhaustiveEnumeration;
+import mi.poker.calculation.HandInfo;
+import mi.poker.calculation.HandParser;
+import mi.poker.calculation.Result;
+import mi.poker.common.utils.CardMask;
+import mi.poker.common.utils.SuitIsomorphism;
+import mi.poker.tests.BaseTest;
+
+public class SuitIsomorphismTest extends BaseTest {
+
+	@Test
+	public void testPermute(){
+		long mask = HandParser.parseCardMask("AcKd2h");
+		for (int p : SuitIsomorphism.ALL) {
+			long image = SuitIsomorphism.permute(mask, p);
+			assertEquals(3, CardMask.size(image));
+		}
+		assertEquals(mask, SuitIsomorphism.permute(mask, SuitIsomorphism.IDENTITY[0]));
+	}
+
+	@Test
+	public void testOrbit(){
+		// every suited hand of the same ranks is in one orbit of 4
+		long[] suited = HandParser.parsePlayersHandMasks("AKs")[0];
+		int canonical = 0;
+		for (long hand : suited) {
+			int orbit = SuitIsomorphism.orbitSize(SuitIsomorphism.ALL, hand);
+			if (orbit != 0) {
+				canonical++;
+				assertEquals(4, orbit);
+			}
+		}
+		assertEquals(1, canonical);
+		assertEquals(24, SuitIsomorphism.stabilizer(SuitIsomorphism.ALL, HandParser.parsePlayersHandMasks("AA")[0]).length);
+		assertEquals(4, SuitIsomorphism.stabilizer(SuitIsomorphism.ALL, HandParser.parseCardMask("AcAh")).length);
+	}
+
+	@Test
+	public void testExactEnumeration(){
+		String[][] cases = {{"AA,KK", ""}, {"AcAh,7d2d", ""}, {"AKs,QQ,76s", "2c7h9d"}};
+		for (String[] c : cases) {
+			ExhaustiveEnumeration all = new ExhaustiveEnumeration();
+			all.setSuitIsomorphism(false);
+			Result expected = all.calculate(c[0], c[1], "");
+			Result result = new ExhaustiveEnumeration().calculate(c[0], c[1], "");
+			for (int i = 0;i<expected.getMap().size();i++){
+				HandInfo e = expected.getHandInfo(i);
+				HandInfo r = result.getHandInfo(i);
+				assertEquals(e.getTotalGames(), r.getTotalGames());
+				assertEquals(e.getPotsWon(), r.getPotsWon());
+				assertEquals(e.getPotsTied(), r.getPotsTied());
+				assertEquals(e.getEquity(), r.getEquity());
+			}
+		}
+	}
+}
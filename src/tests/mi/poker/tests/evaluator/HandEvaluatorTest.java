@@ -0,0 +1,37 @@
+package mi.poker.tests.evaluator;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import mi.poker.common.evaluator.EvaluatorType;
+import mi.poker.common.evaluator.HandEvaluator;
+import mi.poker.common.model.testbed.klaatu.HandEval;
+import mi.poker.tests.BaseTest;
+
+public class HandEvaluatorTest extends BaseTest {
+
+	@Test
+	public void testSameScale() {
+		Random random = new Random(7);
+		int[] cards = new int[7];
+		for (EvaluatorType type : EvaluatorType.values()) {
+			HandEvaluator evaluator = type.create();
+			for (int n = 0; n < 100000; n++) {
+				long mask = 0;
+				for (int i = 0; i < 7; i++) {
+					int card;
+					do {
+						card = random.nextInt(52);
+					} while ((mask & (1L << card)) != 0);
+					mask |= 1L << card;
+					cards[i] = card;
+				}
+				int expected = HandEval.hand7Eval(mask);
+				assertEquals(type.name(), expected, evaluator.evaluate(cards[0], cards[1], cards[2], cards[3], cards[4], cards[5], cards[6]));
+				long board = evaluator.boardState(cards[0], cards[1], cards[2], cards[3], cards[4]);
+				assertEquals(type.name(), expected, evaluator.evaluate(board, cards[5], cards[6]));
+			}
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package mi.poker.tests.evaluator;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.IntBuffer;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+
+import org.junit.Test;
+
+import mi.poker.common.model.testbed.spears2p2.HandRankFile;
+import mi.poker.tests.BaseTest;
+
+public class HandRankFileTest extends BaseTest {
+
+	@Test
+	public void testWriteAndMap() throws IOException {
+		int[] table = new int[100000];
+		for (int i = 0; i < table.length; i++) {
+			table[i] = i * 31 - 7;
+		}
+		File file = File.createTempFile("handRanks", ".bin");
+		try {
+			HandRankFile.write(table, file);
+			IntBuffer mapped = HandRankFile.map(file, table.length, true);
+			assertEquals(table.length, mapped.limit());
+			for (int i = 0; i < table.length; i++) {
+				assertEquals(table[i], mapped.get(i));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testReplace() throws IOException {
+		File dir = Files.createTempDirectory("handRanks").toFile();
+		File file = new File(dir, "handRanks.bin");
+		try {
+			HandRankFile.write(new int[] {1, 2, 3}, file);
+			HandRankFile.write(new int[] {4, 5}, file);
+			IntBuffer mapped = HandRankFile.map(file, 2, true);
+			assertEquals(4, mapped.get(0));
+			assertEquals(5, mapped.get(1));
+			assertEquals(1, dir.list().length); // no temporary file left
+		} finally {
+			file.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testPermissions() throws IOException {
+		File dir = Files.createTempDirectory("handRanks").toFile();
+		File file = new File(dir, "handRanks.bin");
+		File plain = new File(dir, "plain.bin");
+		try {
+			if (Files.getFileAttributeView(dir.toPath(), PosixFileAttributeView.class) == null) {
+				return; // no permissions to compare
+			}
+			HandRankFile.write(new int[] {1, 2, 3}, file);
+			plain.createNewFile();
+			// umask based like any new file, not private to the owner
+			assertEquals(Files.getPosixFilePermissions(plain.toPath()), Files.getPosixFilePermissions(file.toPath()));
+		} finally {
+			file.delete();
+			plain.delete();
+			dir.delete();
+		}
+	}
+
+	@Test
+	public void testCorruptedFile() throws IOException {
+		File file = File.createTempFile("handRanks", ".bin");
+		try {
+			HandRankFile.write(new int[] {1, 2, 3, 4}, file);
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			raf.seek(file.length() - 1);
+			raf.write(42);
+			raf.close();
+			try {
+				HandRankFile.map(file, 4, true);
+				fail("checksum mismatch expected");
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			file.delete();
+		}
+	}
+}